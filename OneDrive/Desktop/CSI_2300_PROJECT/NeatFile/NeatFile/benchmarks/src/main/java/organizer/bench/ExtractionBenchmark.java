@@ -0,0 +1,65 @@
+package organizer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import organizer.rule.FileContext;
+import organizer.rule.RuleMatcher;
+import organizer.rule.StringContainedRule;
+
+// StringContainedRule per document type, with the extraction cache switched off so every call pays for
+// the real extraction. "hit" puts the needle in the last paragraph, so both cases read the whole document.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dneatfile.extraction.cacheBytes=0")
+public class ExtractionBenchmark {
+
+    @Param({"txt", "pdf", "docx", "xlsx", "pptx"})
+    public String type;
+
+    @Param({"hit", "miss"})
+    public String needle;
+
+    @Param({"200"})
+    public int paragraphs;
+
+    private Path directory;
+    private Path document;
+    private RuleMatcher matcher;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("neatfile-extract");
+        document = Fixtures.document(directory, type, paragraphs, needle.equals("hit"), 11);
+        matcher = new StringContainedRule(Fixtures.NEEDLE, false, false).compile();
+        if (matcher.matches(FileContext.of(document)) != needle.equals("hit")) {
+            throw new IllegalStateException("Fixture " + document + " does not search as expected");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public boolean search(){
+        return matcher.matches(FileContext.of(document));
+    }
+}
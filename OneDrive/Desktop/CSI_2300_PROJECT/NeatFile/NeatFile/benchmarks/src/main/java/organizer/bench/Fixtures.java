@@ -0,0 +1,188 @@
+package organizer.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+// Generated, seeded fixture corpora, so every benchmark runs offline against the same files.
+final class Fixtures {
+    static final String NEEDLE = "quarterly-reconciliation-7731";
+
+    private static final String[] STEMS = {
+        "Quarterly_Report", "IMG_2024", "holiday-photo", "notes on meeting", "invoice", "budget", "archive",
+        "song", "Screenshot 2024-01-01 at 12.00.00", "scan", "contract_final_v2", "readme", "DSC", "lecture"
+    };
+    private static final String[] EXTENSIONS = {
+        ".pdf", ".PDF", ".jpeg", ".jpg", ".png", ".HEIC", ".txt", ".md", ".docx", ".xlsx", ".pptx",
+        ".tar.gz", ".zip", ".flac", ".mp3", ".mp4", ".mkv", ".html", ".csv", ""
+    };
+    private static final String[] WORDS = {
+        "the", "report", "figures", "ledger", "account", "review", "meeting", "summary", "project", "total",
+        "invoice", "payment", "schedule", "draft", "approved", "region", "quarter", "forecast", "budget", "team"
+    };
+
+    private Fixtures(){
+    }
+
+    // realistic download-folder names: mixed case, multi-dot extensions, spaces, some without an extension
+    static List<String> names(int count, long seed){
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(STEMS[random.nextInt(STEMS.length)] + "_" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+        }
+        return names;
+    }
+
+    // small files with a short text body (real documents for pdf/docx/xlsx/pptx); a quarter contain
+    // the needle and about a third were last accessed long ago
+    static List<Path> files(Path directory, int count, long seed) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        List<Path> files = new ArrayList<>(count);
+        for (String name : names(count, seed)) {
+            Path file = directory.resolve(name);
+            List<String> body = new ArrayList<>();
+            for (int i = 1 + random.nextInt(8); i > 0; i--) {
+                body.add(text(random, 20 + random.nextInt(40)));
+            }
+            if (random.nextInt(4) == 0) {
+                body.add(NEEDLE);
+            }
+            String lower = name.toLowerCase();
+            String type = lower.endsWith(".pdf") || lower.endsWith(".docx") || lower.endsWith(".xlsx") || lower.endsWith(".pptx")
+                ? lower.substring(lower.lastIndexOf('.') + 1) : "txt";
+            write(file, type, body);
+            if (random.nextInt(3) == 0) {
+                Files.setAttribute(file, "lastAccessTime", FileTime.fromMillis(now - 400L * 86_400_000L));
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    // one document of the given type ("txt", "pdf", "docx", "xlsx", "pptx") holding `paragraphs` paragraphs
+    // of filler; with needle set, the needle is in the last paragraph so a search has to read everything
+    static Path document(Path directory, String type, int paragraphs, boolean needle, long seed) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(seed);
+        List<String> text = new ArrayList<>(paragraphs);
+        for (int i = 0; i < paragraphs; i++) {
+            text.add(text(random, 40 + random.nextInt(40)) + (needle && i == paragraphs - 1 ? " " + NEEDLE : ""));
+        }
+        Path file = directory.resolve("fixture-" + paragraphs + (needle ? "-hit." : "-miss.") + type);
+        write(file, type, text);
+        return file;
+    }
+
+    private static void write(Path file, String type, List<String> text) throws IOException {
+        switch (type) {
+            case "txt" -> Files.write(file, text);
+            case "pdf" -> writePdf(file, text);
+            case "docx" -> {
+                try (XWPFDocument document = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+                    for (String paragraph : text) {
+                        document.createParagraph().createRun().setText(paragraph);
+                    }
+                    document.write(out);
+                }
+            }
+            case "xlsx" -> {
+                try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+                    XSSFSheet sheet = workbook.createSheet("Data");
+                    for (int i = 0; i < text.size(); i++) {
+                        XSSFRow row = sheet.createRow(i);
+                        row.createCell(0).setCellValue(i);
+                        row.createCell(1).setCellValue(text.get(i));
+                    }
+                    workbook.write(out);
+                }
+            }
+            case "pptx" -> {
+                try (XMLSlideShow slides = new XMLSlideShow(); OutputStream out = Files.newOutputStream(file)) {
+                    for (int i = 0; i < text.size(); i += 5) {
+                        XSLFTextBox box = slides.createSlide().createTextBox();
+                        for (String paragraph : text.subList(i, Math.min(text.size(), i + 5))) {
+                            box.addNewTextParagraph().addNewTextRun().setText(paragraph);
+                        }
+                    }
+                    slides.write(out);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown fixture type: " + type);
+        }
+    }
+
+    private static void writePdf(Path file, List<String> text) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            int linesPerPage = 40;
+            for (int start = 0; start < text.size(); start += linesPerPage) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 8);
+                    content.setLeading(10);
+                    content.newLineAtOffset(20, 760);
+                    for (String line : text.subList(start, Math.min(text.size(), start + linesPerPage))) {
+                        content.showText(line.length() > 150 ? line.substring(0, 150) : line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            // keep the needle on the last page even when the line above was cut short
+            if (text.get(text.size() - 1).contains(NEEDLE)) {
+                PDPage page = document.getPage(document.getNumberOfPages() - 1);
+                try (PDPageContentStream content = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, false)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 8);
+                    content.newLineAtOffset(20, 20);
+                    content.showText(NEEDLE);
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+    }
+
+    private static String text(Random random, int words){
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
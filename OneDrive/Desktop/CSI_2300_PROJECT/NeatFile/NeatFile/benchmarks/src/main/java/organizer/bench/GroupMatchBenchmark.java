@@ -0,0 +1,85 @@
+package organizer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import organizer.NeatGroup;
+import organizer.rule.FileCategoryRule;
+import organizer.rule.FileContext;
+import organizer.rule.FileExtensionRule;
+import organizer.rule.LastAccessedRule;
+import organizer.rule.NameHasRule;
+import organizer.rule.StringContainedRule;
+
+// NeatGroup.matches with the rule mixes people actually configure. Each file gets a fresh FileContext,
+// as in the pipeline, so the cost of the shared attribute read and of adaptive rule ordering is included.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupMatchBenchmark {
+
+    // names: category + file name; mixed: adds an access-time rule; content: adds a text search
+    @Param({"names", "mixed", "content"})
+    public String mix;
+
+    private Path directory;
+    private Path[] files;
+    private NeatGroup group;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("neatfile-group");
+        List<Path> created = Fixtures.files(directory, 512, 7);
+        files = created.toArray(new Path[0]);
+        group = new NeatGroup(Set.of(directory), directory.resolve("sorted"));
+        switch (mix) {
+            case "names" -> {
+                group.addRule(new FileCategoryRule("Image"));
+                group.addRule(new NameHasRule("img_|dsc|screenshot", false, true));
+            }
+            case "mixed" -> {
+                group.addRule(new FileExtensionRule(Set.of(".pdf", ".docx", ".txt", ".md")));
+                group.addRule(new NameHasRule("report", false, false));
+                group.addRule(new LastAccessedRule(365));
+            }
+            case "content" -> {
+                group.addRule(new FileCategoryRule("Document"));
+                group.addRule(new StringContainedRule(Fixtures.NEEDLE, false, false));
+                group.addRule(new LastAccessedRule(30));
+            }
+            default -> throw new IllegalArgumentException(mix);
+        }
+        group.compile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public void matches(Blackhole blackhole){
+        for (Path file : files) {
+            blackhole.consume(group.matches(FileContext.of(file)));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package organizer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import organizer.NeatFileLogic;
+import organizer.NeatGroup;
+import organizer.rule.FileCategoryRule;
+import organizer.rule.FileExtensionRule;
+import organizer.rule.NameHasRule;
+
+// NeatFileLogic.processFile end to end: a burst of files lands in a temp watch directory and the
+// benchmark waits until the pipeline has matched and moved all of them. One operation = one burst.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dneatfile.log.level=warn")   // no per-move log lines in the results
+public class ProcessFileBenchmark {
+
+    @Param({"1000", "10000"})
+    public int burst;
+
+    private NeatFileLogic organizer;
+    private Path root;
+    private Path watch;
+    private List<Path> files;
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("neatfile-pipeline");
+        watch = Files.createDirectories(root.resolve("inbox"));
+        organizer = new NeatFileLogic();
+
+        NeatGroup documents = new NeatGroup(Set.of(watch), root.resolve("documents"));
+        documents.addRule(new FileCategoryRule("Document"));
+        NeatGroup pictures = new NeatGroup(Set.of(watch), root.resolve("pictures"));
+        pictures.addRule(new FileCategoryRule("Image"));
+        pictures.addRule(new NameHasRule("img_|dsc|screenshot", false, true));
+        NeatGroup archives = new NeatGroup(Set.of(watch), root.resolve("archives"));
+        archives.addRule(new FileExtensionRule(Set.of(".zip", ".tar.gz")));
+        organizer.addGroup(documents);
+        organizer.addGroup(pictures);
+        organizer.addGroup(archives);
+    }
+
+    // a fresh burst per iteration, under new names so nothing is overwritten
+    @Setup(Level.Iteration)
+    public void arrive() throws IOException {
+        Path batch = Files.createDirectories(watch.resolve("burst-" + iteration++));
+        files = Fixtures.names(burst, iteration).stream().map(batch::resolve).toList();
+        for (Path file : files) {
+            Files.writeString(file, "x");
+        }
+    }
+
+    @Benchmark
+    public int processBurst() throws InterruptedException {
+        for (Path file : files) {
+            organizer.processFile(file);
+        }
+        while (organizer.pendingCount() > 0) {
+            Thread.sleep(0, 200_000);
+        }
+        return files.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        organizer.shutdown();
+        Fixtures.delete(root);
+    }
+}
@@ -0,0 +1,180 @@
+package organizer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import organizer.rule.DocumentExtractor;
+import organizer.rule.FileCategoryRule;
+import organizer.rule.FileContext;
+import organizer.rule.FileExtensionRule;
+import organizer.rule.LastAccessedRule;
+import organizer.rule.NameHasRule;
+import organizer.rule.Rule;
+import organizer.rule.RuleMatcher;
+import organizer.rule.StringContainedRule;
+
+// Rule.matches(Path) for every rule type over a generated download folder of 512 files (one pass per
+// operation): one attribute read each for LastAccessedRule, a text or document read for StringContainedRule.
+// matcher=legacy runs the matches() bodies from before rules were compiled, which redo their setup (regex
+// compile, lowercasing the needle and extensions, the age threshold) on every call, next to Rule.compile().
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleMatchBenchmark {
+    private static final int FILES = 512;
+
+    @Param({"extension", "category", "nameSubstring", "nameRegex", "lastAccessed", "stringContained"})
+    public String rule;
+
+    @Param({"compiled", "legacy"})
+    public String matcher;
+
+    private Path directory;
+    private Path[] files;
+    private Predicate<Path> subject;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("neatfile-rules");
+        List<Path> created = Fixtures.files(directory, FILES, 42);
+        if (rule.equals("stringContained")) {   // in practice gated to documents; other types would only log "unsupported"
+            created = created.stream().filter(file -> isSearchable(file.getFileName().toString().toLowerCase())).toList();
+        }
+        files = created.toArray(new Path[0]);
+        subject = switch (matcher) {
+            case "compiled" -> {
+                RuleMatcher compiled = compiled().compile();
+                yield file -> compiled.matches(FileContext.of(file));   // one context per file, as the engine does
+            }
+            case "legacy" -> legacy();
+            default -> throw new IllegalArgumentException(matcher);
+        };
+    }
+
+    private Rule compiled(){
+        return switch (rule) {
+            case "extension" -> new FileExtensionRule(Set.of(".pdf", ".tar.gz", ".jpeg"));
+            case "category" -> new FileCategoryRule("Document");
+            case "nameSubstring" -> new NameHasRule("Report", false, false);
+            case "nameRegex" -> new NameHasRule("report|invoice|img_\\d+", false, true);
+            case "lastAccessed" -> new LastAccessedRule(365);
+            case "stringContained" -> new StringContainedRule(Fixtures.NEEDLE, false, false);
+            default -> throw new IllegalArgumentException(rule);
+        };
+    }
+
+    // the same rules as compiled(), as their matches() bodies were before the compile phase
+    private Predicate<Path> legacy(){
+        return switch (rule) {
+            case "extension" -> legacyExtension(Set.of(".pdf", ".tar.gz", ".jpeg"));
+            case "category" -> legacyExtension(Set.of(".txt", ".docx", ".pdf", ".md", ".doc", ".xlsx", ".html", ".pptx", ".ppt"));
+            case "nameSubstring" -> legacyName("Report", false, false);
+            case "nameRegex" -> legacyName("report|invoice|img_\\d+", false, true);
+            case "lastAccessed" -> legacyLastAccessed(365);
+            case "stringContained" -> legacyContained(Fixtures.NEEDLE, false, false);
+            default -> throw new IllegalArgumentException(rule);
+        };
+    }
+
+    private static Predicate<Path> legacyName(String input, boolean caseSensitive, boolean useRegex){
+        return file -> {
+            String fileName = file.getFileName().toString();
+            if (useRegex) {
+                Pattern pattern = caseSensitive ? Pattern.compile(input) : Pattern.compile(input, Pattern.CASE_INSENSITIVE);
+                return pattern.matcher(fileName).find();
+            }
+            String compareName = caseSensitive ? fileName : fileName.toLowerCase();
+            String compareInput = caseSensitive ? input : input.toLowerCase();
+            return compareName.contains(compareInput);
+        };
+    }
+
+    private static Predicate<Path> legacyExtension(Set<String> extensions){
+        return file -> {
+            String fileName = file.getFileName().toString().toLowerCase();
+            return extensions.stream().anyMatch(fileName::endsWith);
+        };
+    }
+
+    private static Predicate<Path> legacyLastAccessed(long days){
+        return file -> {
+            try {
+                FileTime lastAccess = (FileTime) Files.getAttribute(file, "lastAccessTime");
+                long thresholdTime = System.currentTimeMillis() - (days * 24 * 60 * 60 * 1000);
+                return lastAccess.toMillis() < thresholdTime;
+            } catch (IOException e) {
+                return false;
+            }
+        };
+    }
+
+    // whole text in memory, then the per-call pattern/lowercase of the old rule; extraction as it is today
+    private static Predicate<Path> legacyContained(String input, boolean caseSensitive, boolean useRegex){
+        return file -> {
+            String text;
+            try {
+                text = readText(file);
+            } catch (Exception e) {
+                return false;
+            }
+            if (useRegex) {
+                Pattern pattern = caseSensitive ? Pattern.compile(input) : Pattern.compile(input, Pattern.CASE_INSENSITIVE);
+                return pattern.matcher(text).find();
+            }
+            String compareText = caseSensitive ? text : text.toLowerCase();
+            String compareInput = caseSensitive ? input : input.toLowerCase();
+            return compareText.contains(compareInput);
+        };
+    }
+
+    private static String readText(Path file) throws Exception {
+        if (file.getFileName().toString().toLowerCase().endsWith(".txt")) {
+            return Files.readString(file);
+        }
+        StringBuilder text = new StringBuilder();
+        DocumentExtractor.extract(file, chunk -> {
+            text.append(chunk);
+            return false;
+        });
+        return text.toString();
+    }
+
+    private static boolean isSearchable(String lowerName){
+        return lowerName.endsWith(".txt") || DocumentExtractor.supports(lowerName);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public void matches(Blackhole blackhole){
+        for (Path file : files) {
+            blackhole.consume(subject.test(file));
+        }
+    }
+}
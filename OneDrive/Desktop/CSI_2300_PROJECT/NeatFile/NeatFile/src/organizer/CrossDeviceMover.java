@@ -0,0 +1,237 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Moves a file onto another filesystem: FileChannel.transferTo into a hidden ".part" file next to the
+// target (the kernel uses copy_file_range/sendfile where it can), optionally verify a CRC32C of both
+// sides, force to disk, rename into place and only then delete the source. At most
+// neatfile.copy.perDevice copies touch any one device at a time. A large copy that gets interrupted
+// leaves its part file behind and the next attempt continues from where it stopped.
+public class CrossDeviceMover {
+    private static final Logger LOG = LogManager.getLogger(CrossDeviceMover.class);
+    private static final String PART_SUFFIX = ".neatfile.part";   // ends in .part, so EventCoalescer ignores it
+    private static final long TRANSFER_CHUNK = 64L << 20;
+    private static final long RESUME_BACKOFF = 1L << 20;   // re-copy the tail, it may not have reached the disk
+    private static final int VERIFY_BUFFER = 1 << 20;
+
+    private final int perDevice;
+    private final boolean verify;
+    private final long resumeThreshold;
+    private final Map<FileStore, Semaphore> deviceLimits = new ConcurrentHashMap<>();
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final AtomicLong filesMoved = new AtomicLong();
+    private final AtomicLong resumedCopies = new AtomicLong();
+    private final AtomicLong verifyFailures = new AtomicLong();
+
+    // -Dneatfile.copy.perDevice (default 2), -Dneatfile.copy.verify (default false),
+    // -Dneatfile.copy.resumeThresholdBytes (default 64MB): smaller files simply start over
+    public CrossDeviceMover(){
+        this(Integer.getInteger("neatfile.copy.perDevice", 2),
+            Boolean.getBoolean("neatfile.copy.verify"),
+            Long.getLong("neatfile.copy.resumeThresholdBytes", 64L << 20));
+    }
+
+    public CrossDeviceMover(int perDevice, boolean verify, long resumeThreshold){
+        this.perDevice = Math.max(1, perDevice);
+        this.verify = verify;
+        this.resumeThreshold = resumeThreshold;
+    }
+
+    public void move(Path source, Path target) throws IOException {
+        try {   // same device after all (e.g. the store lookup failed): a rename is enough
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            filesMoved.incrementAndGet();
+            return;
+        } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+            // really another device, or a platform that won't replace with a rename; copy below
+        }
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        List<Semaphore> permits = acquire(source.getParent(), target.getParent());
+        try {
+            copy(source, target, attributes);
+        } finally {
+            permits.forEach(Semaphore::release);
+        }
+        filesMoved.incrementAndGet();
+    }
+
+    private void copy(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        // size and mtime in the name, so a part file is only resumed against the same version of the source
+        Path part = target.resolveSibling("." + target.getFileName() + "." + size + "-" + modified + PART_SUFFIX);
+        boolean keepPart = false;
+        boolean renamed = false;
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long position = 0;
+                if (size >= resumeThreshold) {
+                    position = Math.max(0, Math.min(out.size(), size) - RESUME_BACKOFF);
+                    if (position > 0) {
+                        resumedCopies.incrementAndGet();
+                        LOG.info("Resuming copy of {} at {} of {} bytes", source, position, size);
+                    }
+                }
+                out.truncate(position);
+                keepPart = size >= resumeThreshold;   // from here on an interruption leaves a resumable part file
+                long nextReport = size >= resumeThreshold ? position + size / 10 : Long.MAX_VALUE;
+                while (position < size) {
+                    long sent = in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out.position(position));
+                    if (sent <= 0) {
+                        throw new IOException("Source shrank while copying: " + source);
+                    }
+                    position += sent;
+                    bytesCopied.addAndGet(sent);
+                    if (position >= nextReport && position < size) {
+                        LOG.info("Copying {}: {}%", source, position * 100 / size);
+                        nextReport = position + size / 10;
+                    }
+                }
+                out.force(true);   // on disk before the source goes away
+                if (verify && checksum(in, size) != checksum(out, size)) {
+                    verifyFailures.incrementAndGet();
+                    keepPart = false;
+                    throw new IOException("Checksum mismatch copying " + source + " to " + target);
+                }
+            }
+
+            BasicFileAttributes after = Files.readAttributes(source, BasicFileAttributes.class);
+            if (after.size() != size || after.lastModifiedTime().toMillis() != modified) {
+                keepPart = false;
+                throw new IOException("Source changed while copying: " + source);
+            }
+            copyOwnerAndPermissions(source, part);
+            Files.setLastModifiedTime(part, attributes.lastModifiedTime());
+            try {
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            renamed = true;
+        } finally {
+            if (!renamed && !keepPart) {   // whatever went wrong, including runtime errors from the channels
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException e) {
+                    LOG.warn("Failed to remove {}: {}", part, e.getMessage());
+                }
+            }
+        }
+        try {
+            Files.delete(source);
+        } catch (NoSuchFileException e) {
+            // already gone, the copy is what counts
+        }
+    }
+
+    // what Files.move keeps across filesystems: owner and group where we're allowed to set them (the process
+    // owns the copy otherwise, as with mv), then the mode bits, which a chown may have cleared. Best effort like
+    // Files.move: a destination that takes the data but not chmod (some NAS/SMB mounts) keeps its own defaults
+    private static void copyOwnerAndPermissions(Path source, Path part) throws IOException {
+        PosixFileAttributeView from = Files.getFileAttributeView(source, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        PosixFileAttributeView to = Files.getFileAttributeView(part, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (from == null || to == null) {   // not POSIX on one side (e.g. a FAT drive), nothing to carry over
+            return;
+        }
+        PosixFileAttributes attributes = from.readAttributes();
+        try {
+            to.setOwner(attributes.owner());
+            to.setGroup(attributes.group());
+        } catch (IOException e) {
+            LOG.debug("Kept our own ownership of {}: {}", part, e.getMessage());
+        }
+        try {
+            to.setPermissions(attributes.permissions());
+        } catch (IOException e) {
+            LOG.debug("Kept the default permissions of {}: {}", part, e.getMessage());
+        }
+    }
+
+    private static long checksum(FileChannel channel, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(VERIFY_BUFFER);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    // one permit from each device involved, always taken in the same order so two copies can't deadlock
+    private List<Semaphore> acquire(Path sourceDirectory, Path targetDirectory) throws IOException {
+        List<FileStore> stores = new ArrayList<>(2);
+        stores.add(Files.getFileStore(sourceDirectory));
+        FileStore targetStore = Files.getFileStore(targetDirectory);
+        if (!targetStore.equals(stores.get(0))) {
+            stores.add(targetStore);
+        }
+        stores.sort(Comparator.comparing(FileStore::toString));
+        List<Semaphore> acquired = new ArrayList<>(2);
+        try {
+            for (FileStore store : stores) {
+                Semaphore limit = deviceLimits.computeIfAbsent(store, s -> new Semaphore(perDevice));
+                limit.acquire();
+                acquired.add(limit);
+            }
+        } catch (InterruptedException e) {
+            acquired.forEach(Semaphore::release);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to copy to " + targetDirectory, e);
+        }
+        return acquired;
+    }
+
+    public long getBytesCopied(){
+        return bytesCopied.get();
+    }
+
+    public long getFilesMoved(){
+        return filesMoved.get();
+    }
+
+    public long getResumedCopies(){
+        return resumedCopies.get();
+    }
+
+    public long getVerifyFailures(){
+        return verifyFailures.get();
+    }
+
+    @Override
+    public String toString(){
+        return "CrossDeviceMover[files=" + filesMoved.get() + ", bytes=" + bytesCopied.get()
+            + ", resumed=" + resumedCopies.get() + ", verifyFailures=" + verifyFailures.get() + "]";
+    }
+}
@@ -0,0 +1,90 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import organizer.rule.FileContext;
+
+// Remembers why a file was left where it is (no match, conflict, already in place), so an unchanged file
+// isn't run through every rule again on each scan pass or watcher event. A decision is reused only while
+// the file's identity, size and mtime, the group configuration's fingerprint and the decision's own
+// expiry (set by time-based rules) all still hold. The access time only counts for files a group with an
+// access-time rule could match, since extracting a file's text for a content rule bumps it.
+public class DecisionCache {
+    private static final long ANY_ACCESS_TIME = Long.MIN_VALUE;
+    private final int maxEntries;
+    private final Map<Path, Decision> decisions = new ConcurrentHashMap<>();
+
+    private record Decision(Object identity, long size, long modifiedMillis, long accessedMillis,
+                            long configFingerprint, MatchResult.Outcome outcome, long validUntil) {
+    }
+
+    // -Dneatfile.decisions.maxEntries (default 100000, 0 turns the cache off)
+    public DecisionCache(){
+        this(Integer.getInteger("neatfile.decisions.maxEntries", 100_000));
+    }
+
+    public DecisionCache(int maxEntries){
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    // the earlier outcome if it still applies to this version of the file under this configuration, else null
+    public MatchResult.Outcome lookup(FileContext file, GroupIndex index){
+        Decision decision = decisions.get(file.getPath());
+        if (decision == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = file.attributes();
+            boolean current = decision.configFingerprint() == index.getFingerprint()
+                && decision.size() == attributes.size()
+                && decision.modifiedMillis() == attributes.lastModifiedTime().toMillis()
+                && Objects.equals(decision.identity(), attributes.fileKey())
+                && file.getEvaluationTime() < decision.validUntil()
+                // an access-time rule that passed keeps passing only while the access time stays put
+                && (decision.accessedMillis() == ANY_ACCESS_TIME
+                    || decision.accessedMillis() == attributes.lastAccessTime().toMillis());
+            if (current) {
+                return decision.outcome();
+            }
+        } catch (IOException e) {
+            // gone or unreadable: evaluate again and let the pipeline report it
+        }
+        decisions.remove(file.getPath(), decision);
+        return null;
+    }
+
+    // call with the same context the outcome was computed from, so its attributes and expiry match
+    public void remember(FileContext file, GroupIndex index, MatchResult.Outcome outcome){
+        if (maxEntries == 0) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = file.attributes();
+            if (decisions.size() >= maxEntries) {   // bounded like MovePlanner's store cache; survivors are re-decided cheaply
+                decisions.clear();
+            }
+            long accessed = index.readsAccessTime(file) ? attributes.lastAccessTime().toMillis() : ANY_ACCESS_TIME;
+            decisions.put(file.getPath(), new Decision(attributes.fileKey(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), accessed,
+                index.getFingerprint(), outcome, file.getValidUntil()));
+        } catch (IOException e) {
+            // nothing to key the decision on
+        }
+    }
+
+    public void forget(Path file){
+        decisions.remove(file);
+    }
+
+    public void clear(){
+        decisions.clear();
+    }
+
+    public int size(){
+        return decisions.size();
+    }
+}
@@ -0,0 +1,124 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Polls watch directories and only hands new or changed files on, so a pass over an unchanged tree
+// costs one walk and no rule evaluations. A full pass covers every subfolder, like the WatchRegistry does. They go through the EventCoalescer like watcher events, so a
+// pass never picks up a download that is still being written.
+public class DirectoryScanner {
+    private static final Logger LOG = LogManager.getLogger(DirectoryScanner.class);
+    private final NeatFileLogic organizer;
+    private final EventCoalescer coalescer;
+    private final ScanSnapshot snapshot = new ScanSnapshot();
+    private final long timeRuleRecheckMillis;
+    private long seenConfigVersion = -1;
+    private long lastFullRecheck;
+
+    public DirectoryScanner(NeatFileLogic organizer, EventCoalescer coalescer){
+        this.organizer = organizer;
+        this.coalescer = coalescer;
+        // files that failed a time-based rule (LastAccessedRule) may pass later without changing
+        this.timeRuleRecheckMillis = TimeUnit.MINUTES.toMillis(Long.getLong("neatfile.scan.timeRuleRecheckMinutes", 60));
+    }
+
+    // one pass over the given directories; returns how many new or changed files were found
+    public int scan(Collection<Path> directories){
+        long now = System.currentTimeMillis();
+        long configVersion = organizer.getConfigVersion();
+        if (configVersion != seenConfigVersion) {   // new rules: everything deserves another look
+            snapshot.clear();
+            seenConfigVersion = configVersion;
+            lastFullRecheck = now;
+        } else if (organizer.hasTimeDependentRules() && now - lastFullRecheck >= timeRuleRecheckMillis) {
+            snapshot.clear();
+            lastFullRecheck = now;
+        }
+        Path failed;
+        while ((failed = organizer.pollFailedMove()) != null) {
+            snapshot.forget(failed);
+        }
+
+        snapshot.beginPass();
+        int submitted = 0;
+        Set<Path> distinct = new LinkedHashSet<>(directories);   // groups often share a watch directory
+        for (Path dir : distinct) {
+            if (distinct.stream().noneMatch(other -> !other.equals(dir) && dir.startsWith(other))) {   // else walked with its parent
+                submitted += scanDirectory(dir, Integer.MAX_VALUE);
+            }
+        }
+        snapshot.endPass();
+        return submitted;
+    }
+
+    // one folder only, e.g. after the watcher lost its events (each subfolder has its own key, so its own rescan);
+    // not a pass, so nothing is dropped from the snapshot.
+    // That usually happens mid create storm, so its files wait in the coalescer like everything else.
+    public int rescan(Path dir){
+        return scanDirectory(dir, 1);
+    }
+
+    // rescans just the folders of files whose move failed since the last call (a full pass does this too)
+    public int retryFailedMoves(){
+        Set<Path> dirs = new LinkedHashSet<>();
+        Path failed;
+        while ((failed = organizer.pollFailedMove()) != null) {
+            snapshot.forget(failed);
+            if (failed.getParent() != null) {
+                dirs.add(failed.getParent());
+            }
+        }
+        int submitted = 0;
+        for (Path dir : dirs) {
+            submitted += scanDirectory(dir, 1);
+        }
+        return submitted;
+    }
+
+    // maxDepth 1 lists just dir; links are never followed, same as the watch registration walk
+    private int scanDirectory(Path dir, int maxDepth){
+        int[] submitted = {0};
+        try {
+            // the walk hands us each entry's attributes, so the engine doesn't stat it again
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()
+                            && snapshot.observe(file, attrs.size(), attrs.lastModifiedTime().toMillis())) {
+                        LOG.debug("[Manual Scan] Checking file: {}", file);
+                        coalescer.onScanned(file, attrs);
+                        submitted[0]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    if (file.equals(dir)) {
+                        LOG.warn("Failed to scan folder: {} - {}", dir, e.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Failed to scan folder: {} - {}", dir, e.getMessage());
+        }
+        return submitted[0];
+    }
+
+    public int trackedFiles(){
+        return snapshot.size();
+    }
+}
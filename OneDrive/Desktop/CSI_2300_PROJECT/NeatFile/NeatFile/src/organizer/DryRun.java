@@ -0,0 +1,253 @@
+package organizer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.rule.Rule;
+import organizer.rule.RuleStats;
+
+// Runs a groups.json against the real files under its watch directories without moving anything.
+// Prints the planned moves and conflicts, then files/sec, time per rule and the slowest files.
+//   java -cp "bin:lib/*" organizer.DryRun [groups.json] [--out plan.tsv] [--threads N] [--slowest N] [--depth N]
+public class DryRun {
+    private static final Logger LOG = LogManager.getLogger(DryRun.class);
+    private final NeatFileLogic organizer;
+    private final Writer plan;
+    private final Map<MatchResult.Outcome, LongAdder> outcomes = new EnumMap<>(MatchResult.Outcome.class);
+    private final Map<Path, Path> plannedTargets = new ConcurrentHashMap<>();   // target file -> first source headed there
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+    private final LongAdder evaluationNanos = new LongAdder();
+    private final SlowestFiles slowest;
+
+    public DryRun(NeatFileLogic organizer, Writer plan, int slowestCount){
+        this.organizer = organizer;
+        this.plan = plan;
+        this.slowest = new SlowestFiles(slowestCount);
+        for (MatchResult.Outcome outcome : MatchResult.Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    // keeps the n slowest evaluations; files faster than the current floor skip the lock
+    private static class SlowestFiles {
+        private record Timed(Path file, long nanos) {
+        }
+
+        private final int limit;
+        private final PriorityQueue<Timed> heap = new PriorityQueue<>(Comparator.comparingLong(Timed::nanos));
+        private volatile long floor;
+
+        private SlowestFiles(int limit){
+            this.limit = limit;
+        }
+
+        private void offer(Path file, long nanos){
+            if (limit <= 0 || nanos <= floor) {
+                return;
+            }
+            synchronized (heap) {
+                heap.add(new Timed(file, nanos));
+                if (heap.size() > limit) {
+                    heap.poll();
+                    floor = heap.peek().nanos();
+                }
+            }
+        }
+
+        private List<Timed> sorted(){
+            synchronized (heap) {
+                List<Timed> sorted = new ArrayList<>(heap);
+                sorted.sort(Comparator.comparingLong(Timed::nanos).reversed());
+                return sorted;
+            }
+        }
+    }
+
+    public void evaluate(Path file, BasicFileAttributes attributes){
+        long start = System.nanoTime();
+        MatchResult result = organizer.evaluate(file, attributes);
+        long nanos = System.nanoTime() - start;
+        evaluationNanos.add(nanos);
+        slowest.offer(file, nanos);
+        outcomes.get(result.outcome()).increment();
+
+        switch (result.outcome()) {
+            case MOVE -> {
+                Path earlier = plannedTargets.putIfAbsent(result.targetFile(), file);
+                if (earlier != null) {   // the later move would replace the earlier one
+                    collisions.increment();
+                    write("COLLISION\t" + file + "\t" + result.targetFile() + "\t" + earlier);
+                } else if (Files.exists(result.targetFile())) {
+                    overwrites.increment();
+                    write("OVERWRITE\t" + file + "\t" + result.targetFile());
+                } else {
+                    write("MOVE\t" + file + "\t" + result.targetFile());
+                }
+            }
+            case CONFLICT -> write("CONFLICT\t" + file + "\t" + result.matchedGroups().stream()
+                .map(g -> g.getTargetDirectory().toString())
+                .collect(Collectors.joining(", ")));
+            default -> { }
+        }
+    }
+
+    private void write(String line){
+        synchronized (plan) {
+            try {
+                plan.write(line);
+                plan.write(System.lineSeparator());
+            } catch (IOException e) {
+                LOG.error("Failed to write plan: {}", e.getMessage());
+            }
+        }
+    }
+
+    public long count(MatchResult.Outcome outcome){
+        return outcomes.get(outcome).sum();
+    }
+
+    public String report(long elapsedNanos, int threads){
+        long files = outcomes.values().stream().mapToLong(LongAdder::sum).sum();
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%nEvaluated %,d files in %.2f s (%,.0f files/sec, %d evaluation threads)%n",
+            files, seconds, seconds > 0 ? files / seconds : 0.0, threads));
+        out.append(String.format(Locale.ROOT, "  moves: %,d (%,d would replace an existing file, %,d collide with another move)%n",
+            count(MatchResult.Outcome.MOVE), overwrites.sum(), collisions.sum()));
+        out.append(String.format(Locale.ROOT, "  conflicts: %,d, no match: %,d, already in place: %,d, not watched: %,d, missing: %,d%n",
+            count(MatchResult.Outcome.CONFLICT), count(MatchResult.Outcome.NO_MATCH), count(MatchResult.Outcome.IN_PLACE),
+            count(MatchResult.Outcome.NOT_WATCHED), count(MatchResult.Outcome.MISSING)));
+        out.append(String.format(Locale.ROOT, "  mean evaluation: %,.0f ns%n", files > 0 ? (double) evaluationNanos.sum() / files : 0.0));
+
+        out.append(String.format("%nTime per rule (sampled timings, evaluation order):%n"));
+        for (NeatGroup group : organizer.getGroups()) {
+            out.append("  -> ").append(group.getTargetDirectory()).append(System.lineSeparator());
+            for (Map.Entry<Rule, RuleStats> entry : group.getRuleStats().entrySet()) {
+                RuleStats stats = entry.getValue();
+                long evaluations = stats.getEvaluations();
+                long timed = stats.getTimedEvaluations();
+                // only measured timings are reported; a rule that was never timed has no numbers, not its estimate
+                String timing = timed == 0
+                    ? String.format(Locale.ROOT, "%10s ns avg %10s ms total (no timed samples)", "n/a", "n/a")
+                    : String.format(Locale.ROOT, "%,10.0f ns avg %,10.1f ms total (%,d timed)",
+                        stats.measuredNanos(), stats.measuredNanos() * evaluations / 1e6, timed);
+                out.append(String.format(Locale.ROOT, "     %-50s %,12d evals %5.1f%% rejected %s%n",
+                    entry.getKey(), evaluations,
+                    evaluations > 0 ? 100.0 * stats.getRejections() / evaluations : 0.0, timing));
+            }
+        }
+
+        List<SlowestFiles.Timed> slow = slowest.sorted();
+        if (!slow.isEmpty()) {
+            out.append(String.format("%nSlowest files:%n"));
+            for (SlowestFiles.Timed timed : slow) {
+                out.append(String.format(Locale.ROOT, "  %,10.2f ms  %s%n", timed.nanos() / 1e6, timed.file()));
+            }
+        }
+        return out.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path configPath = GroupConfig.DEFAULT_PATH;
+        Path planPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int slowestCount = 20;
+        int depth = Integer.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> planPath = Paths.get(args[++i]);
+                case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+                case "--slowest" -> slowestCount = Integer.parseInt(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                default -> configPath = Paths.get(args[i]);
+            }
+        }
+
+        NeatFileLogic organizer = new NeatFileLogic();
+        List<NeatGroup> groups = GroupConfig.load(configPath);
+        for (NeatGroup group : groups) {
+            if (group.getTargetDirectory() == null || !organizer.addGroup(group)) {
+                LOG.warn("Skipping group: {} -> {}", group.getWatchDirectories(), group.getTargetDirectory());
+            }
+        }
+
+        // a watch directory inside another one is already covered by the outer walk
+        TreeSet<Path> roots = new TreeSet<>();
+        organizer.getGroups().forEach(g -> g.getWatchDirectories().forEach(roots::add));
+        roots.removeIf(dir -> roots.stream().anyMatch(other -> !other.equals(dir) && dir.startsWith(other)));
+
+        Writer plan = planPath != null
+            ? Files.newBufferedWriter(planPath, StandardCharsets.UTF_8)
+            : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        DryRun dryRun = new DryRun(organizer, plan, slowestCount);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * 1024), new ThreadPoolExecutor.CallerRunsPolicy());   // the walk slows down instead of queueing the whole share
+
+        AtomicLong walkErrors = new AtomicLong();
+        long start = System.nanoTime();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                LOG.warn("Skipping watch directory: {}", root);
+                continue;
+            }
+            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                    if (attrs.isRegularFile()) {
+                        pool.execute(() -> dryRun.evaluate(file, attrs));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e){
+                    walkErrors.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+        plan.flush();
+        if (planPath != null) {
+            plan.close();
+            System.out.println("Plan written to " + planPath);
+        }
+
+        System.out.print(dryRun.report(elapsed, threads));
+        if (walkErrors.get() > 0) {
+            System.out.println("Unreadable entries skipped: " + walkErrors.get());
+        }
+        organizer.shutdown();
+        LogManager.shutdown();
+    }
+}
@@ -0,0 +1,163 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Sits between the WatchService (and DirectoryScanner) and the engine. Bursts of CREATE/MODIFY events for one path collapse
+// into a single entry, and the file is only released once its size and mtime have held still for the
+// quiet period, so half-written downloads are neither evaluated over and over nor moved.
+public class EventCoalescer {
+    private static final Logger LOG = LogManager.getLogger(EventCoalescer.class);
+    private static final List<String> PARTIAL_SUFFIXES = List.of(
+        ".part", ".partial", ".crdownload", ".download", ".opdownload", ".tmp", ".temp", ".!ut", ".filepart");
+    private static final List<String> PARTIAL_PREFIXES = List.of("~$", ".~lock.");   // Office / LibreOffice lock files
+
+    private final NeatFileLogic organizer;
+    private final long quietNanos;
+    private final List<String> extraSuffixes = new ArrayList<>();
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    private static class Pending {
+        private volatile long lastEventNanos;
+        private volatile long size;
+        private volatile long modifiedMillis;
+
+        private Pending(long now){
+            this.lastEventNanos = now;
+            this.size = -1;
+            this.modifiedMillis = Long.MIN_VALUE;
+        }
+    }
+
+    // -Dneatfile.watch.quietMillis (default 2000), -Dneatfile.watch.ignoreSuffixes=".abc,.xyz" adds to the built-in list
+    public EventCoalescer(NeatFileLogic organizer){
+        this(organizer, Long.getLong("neatfile.watch.quietMillis", 2000));
+    }
+
+    public EventCoalescer(NeatFileLogic organizer, long quietMillis){
+        this.organizer = organizer;
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        for (String suffix : System.getProperty("neatfile.watch.ignoreSuffixes", "").split(",")) {
+            if (!suffix.isBlank()) {
+                extraSuffixes.add(suffix.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "neatfile-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(50, quietMillis / 4);
+        timer.scheduleWithFixedDelay(this::releaseStable, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    public void onEvent(Path file){
+        Path name = file.getFileName();
+        if (name == null || isPartialDownload(name.toString())) {
+            return;
+        }
+        long now = System.nanoTime();
+        Pending entry = pending.get(file);
+        if (entry != null) {   // already waiting, just push the deadline out
+            entry.lastEventNanos = now;
+            return;
+        }
+        Pending created = new Pending(now);
+        if (pending.putIfAbsent(file, created) == null) {
+            observe(file, created);   // baseline for the first stability check
+        }
+    }
+
+    // a new or changed file a directory scan came across; held back like a watcher event until it settles,
+    // with the attributes from the walk as the first baseline
+    public void onScanned(Path file, BasicFileAttributes attributes){
+        Path name = file.getFileName();
+        if (name == null || isPartialDownload(name.toString())) {
+            return;
+        }
+        Pending created = new Pending(System.nanoTime());
+        created.size = attributes.size();
+        created.modifiedMillis = attributes.lastModifiedTime().toMillis();
+        pending.putIfAbsent(file, created);   // already waiting on watcher events: those decide
+    }
+
+    public boolean isPartialDownload(String fileName){
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (String prefix : PARTIAL_PREFIXES) {
+            if (lower.startsWith(prefix)) {
+                return true;
+            }
+        }
+        for (String suffix : PARTIAL_SUFFIXES) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        for (String suffix : extraSuffixes) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int pendingCount(){
+        return pending.size();
+    }
+
+    private void releaseStable(){
+        long now = System.nanoTime();
+        for (Map.Entry<Path, Pending> entry : pending.entrySet()) {
+            Path file = entry.getKey();
+            Pending state = entry.getValue();
+            if (now - state.lastEventNanos < quietNanos) {
+                continue;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                long size = attributes.size();
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (size == state.size && modified == state.modifiedMillis) {
+                    pending.remove(file, state);
+                    organizer.processFile(file, attributes);
+                } else {   // still being written, give it another quiet period
+                    state.size = size;
+                    state.modifiedMillis = modified;
+                    state.lastEventNanos = now;
+                }
+            } catch (IOException e) {   // deleted or renamed away before it settled
+                pending.remove(file, state);
+            } catch (RuntimeException e) {
+                pending.remove(file, state);
+                LOG.error("Failed to release {}", file, e);
+            }
+        }
+    }
+
+    private static void observe(Path file, Pending state){
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            state.size = attributes.size();
+            state.modifiedMillis = attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // leave the baseline unset; the first check will record it
+        }
+    }
+
+    public void shutdown(){
+        timer.shutdownNow();
+    }
+}
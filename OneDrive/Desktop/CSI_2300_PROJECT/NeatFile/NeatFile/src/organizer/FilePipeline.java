@@ -0,0 +1,171 @@
+package organizer;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+import organizer.rule.FileContext;
+
+// Runs files through detect -> stat -> match -> move, each stage on its own pool. Files that content rules need to
+// look inside are matched on a separate content pool, so a slow document never holds up name or attribute matching.
+// Moves are batched per target directory by MovePlanner, which keeps moves onto the same target file in order.
+public class FilePipeline {
+    private static final Logger LOG = LogManager.getLogger(FilePipeline.class);
+    private final NeatFileLogic logic;
+    private final ExecutorService detectPool;
+    private final ExecutorService statPool;
+    private final ExecutorService matchPool;
+    private final ExecutorService contentPool;
+    private final MovePlanner movePlanner;
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<Path> dirty = ConcurrentHashMap.newKeySet();   // submitted again while in flight
+    private final EngineMetrics metrics = EngineMetrics.shared();
+    private final LongSupplier queueDepth = inFlight::size;
+    private volatile boolean shuttingDown;
+
+    public FilePipeline(NeatFileLogic logic, PipelineConfig config){
+        this.logic = logic;
+        this.detectPool = Executors.newFixedThreadPool(config.getDetectThreads(), namedThreads("detect"));
+        this.statPool = Executors.newFixedThreadPool(config.getStatThreads(), namedThreads("stat"));
+        this.matchPool = Executors.newFixedThreadPool(config.getMatchThreads(), namedThreads("match"));
+        this.contentPool = Executors.newFixedThreadPool(config.getContentThreads(), namedThreads("content"));
+        this.movePlanner = new MovePlanner(logic, config.getMoveThreads(), this::finish);
+        metrics.addGauge(EngineMetrics.QUEUE_DEPTH, queueDepth);
+    }
+
+    // attributes may be null; the stat stage then reads them
+    public void submit(Path file, BasicFileAttributes attributes){
+        if (!inFlight.add(file)) {   // already on its way through the pipeline, maybe judged on stale attributes
+            dirty.add(file);
+            if (!inFlight.contains(file) && dirty.remove(file)) {   // it finished in between and didn't see the mark
+                submit(file, null);
+            }
+            return;
+        }
+        metrics.fileSubmitted();
+        try {
+            detectPool.execute(() -> detect(file, attributes));
+        } catch (RejectedExecutionException e) {   // a late watcher event or re-submit after shutdown()
+            drop(file, "detect", e);
+        }
+    }
+
+    private void detect(Path file, BasicFileAttributes attributes){
+        try {
+            if (!logic.isWatched(file)) {
+                finish(file);
+                return;
+            }
+            statPool.execute(() -> stat(file, attributes));
+        } catch (RuntimeException e) {
+            fail(file, "detect", e);
+        }
+    }
+
+    private void stat(Path file, BasicFileAttributes attributes){
+        try {
+            FileContext context = logic.stat(file, attributes);
+            if (context == null) {
+                finish(file);
+                return;
+            }
+            matchPool.execute(() -> match(context));
+        } catch (RuntimeException e) {
+            fail(file, "stat", e);
+        }
+    }
+
+    private void match(FileContext context){
+        try {
+            if (logic.needsContent(context)) {
+                contentPool.execute(() -> resolve(context, "content"));
+                return;
+            }
+        } catch (RuntimeException e) {
+            fail(context.getPath(), "match", e);
+            return;
+        }
+        resolve(context, "match");
+    }
+
+    private void resolve(FileContext context, String stage){
+        Path file = context.getPath();
+        try {
+            Path targetFile = logic.resolveTarget(context);
+            if (targetFile == null) {
+                finish(file);
+                return;
+            }
+            movePlanner.enqueue(file, targetFile);   // batched per target directory, finish() runs once it's moved
+        } catch (RuntimeException e) {
+            fail(file, stage, e);
+        }
+    }
+
+    private void finish(Path file){
+        inFlight.remove(file);
+        if (dirty.remove(file)) {   // changed again while it was being evaluated: look at the new version
+            submit(file, null);
+        }
+    }
+
+    private void fail(Path file, String stage, RuntimeException e){
+        if (e instanceof RejectedExecutionException rejected) {   // the next stage's pool is shut down
+            drop(file, stage, rejected);
+            return;
+        }
+        LOG.error("Pipeline {} stage failed for {}", stage, file, e);
+        finish(file);
+    }
+
+    // leaves the pipeline without a re-submit, so nothing is handed to a pool that is gone
+    private void drop(Path file, String stage, RejectedExecutionException e){
+        inFlight.remove(file);
+        dirty.remove(file);
+        if (shuttingDown) {
+            LOG.debug("Dropped {} after shutdown ({} stage)", file, stage);
+        } else {
+            LOG.error("Pipeline {} stage rejected {}", stage, file, e);
+        }
+    }
+
+    public int inFlightCount(){
+        return inFlight.size();
+    }
+
+    public void shutdown(){
+        shuttingDown = true;
+        metrics.removeGauge(EngineMetrics.QUEUE_DEPTH, queueDepth);
+        for (ExecutorService pool : new ExecutorService[]{detectPool, statPool, matchPool, contentPool}) {
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        movePlanner.shutdown();
+    }
+
+    private static ThreadFactory namedThreads(String stage){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "neatfile-" + stage + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
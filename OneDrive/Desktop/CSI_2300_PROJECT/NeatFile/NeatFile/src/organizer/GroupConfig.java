@@ -0,0 +1,133 @@
+package organizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import organizer.rule.Rule;
+
+// Reads and writes groups.json, so the UI and the headless daemon share one configuration format.
+public class GroupConfig {
+    private static final Logger LOG = LogManager.getLogger(GroupConfig.class);
+
+    public static final Path DEFAULT_PATH = Paths.get("groups.json");
+
+    private static final Map<Path, String> pending = new ConcurrentHashMap<>();   // newest unsaved JSON per file
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "neatfile-config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private GroupConfig(){
+    }
+
+    public static List<NeatGroup> load(Path configPath) throws IOException {
+        List<NeatGroup> groups = new ArrayList<>();
+        String content = Files.readString(configPath);
+        JSONArray jsonGroups = new JSONArray(content);
+        for (int i = 0; i < jsonGroups.length(); i++) {
+            JSONObject jsonGroup = jsonGroups.getJSONObject(i);
+            Set<Path> watchDirs = new HashSet<>(jsonGroup.getJSONArray("watchDirectories")
+                    .toList().stream().map(Object::toString).map(Paths::get).toList());
+            Path targetDir = Paths.get(jsonGroup.getString("targetDirectory"));
+
+            NeatGroup group = new NeatGroup(watchDirs, targetDir);
+            groups.add(group);
+
+            JSONArray jsonRules = jsonGroup.getJSONArray("rules");
+            for (int j = 0; j < jsonRules.length(); j++) {
+                Rule rule = Rule.fromJSON(jsonRules.getJSONObject(j));
+                group.addRule(rule);
+            }
+        }
+        return groups;
+    }
+
+    // writes to a temp file next to groups.json and renames it over the old one, so a crash mid-write never
+    // leaves a truncated config behind
+    public static void save(Path configPath, List<NeatGroup> groups) throws IOException {
+        write(configPath, toJSON(groups));
+    }
+
+    // same, on a background writer so the caller (the FX thread) doesn't wait on the disk. The groups are
+    // serialized right away; when saves pile up only the newest one is written.
+    public static CompletableFuture<Void> saveAsync(Path configPath, List<NeatGroup> groups){
+        pending.put(configPath, toJSON(groups));
+        return CompletableFuture.runAsync(() -> {
+            String latest = pending.remove(configPath);
+            if (latest == null) {   // an earlier task already wrote this one
+                return;
+            }
+            try {
+                write(configPath, latest);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, WRITER);
+    }
+
+    // waits for saves still queued on the background writer, e.g. before the app exits
+    public static void flush(long timeoutMillis){
+        try {
+            CompletableFuture.runAsync(() -> { }, WRITER).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Config writer didn't finish in time: {}", e.toString());
+        }
+    }
+
+    private static String toJSON(List<NeatGroup> groups){
+        JSONArray jsonGroups = new JSONArray();
+        for (NeatGroup group : groups) {
+            JSONObject json = new JSONObject();
+            json.put("watchDirectories", group.getWatchDirectories().stream().map(Path::toString).toList());
+
+            Path targetDir = group.getTargetDirectory();        // null check for target directory
+            if (targetDir == null) {
+                LOG.warn("Skipping group with no target directory");
+                continue;
+            }
+
+            json.put("targetDirectory", targetDir.toString());
+            json.put("rules", group.getRules().stream().map(Rule::toJSON).toList());
+            jsonGroups.put(json);
+        }
+        return jsonGroups.toString(2);
+    }
+
+    private static void write(Path configPath, String content) throws IOException {
+        Path target = configPath.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, content);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);   // only still there when the write or rename failed
+        }
+    }
+}
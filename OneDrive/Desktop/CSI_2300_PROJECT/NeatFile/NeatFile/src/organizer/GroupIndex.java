@@ -0,0 +1,190 @@
+package organizer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import organizer.rule.ContentNeedles;
+import organizer.rule.FileContext;
+import organizer.rule.Rule;
+
+// Immutable lookup from a file's extension and location to the groups that could possibly match it.
+// Rebuilt by NeatFileLogic whenever its group set changes.
+public class GroupIndex {
+    public static final GroupIndex EMPTY = new GroupIndex(Collections.emptyList());
+
+    private final List<NeatGroup> allGroups;
+    private final Map<String, List<NeatGroup>> byExtension = new HashMap<>();
+    private final List<NeatGroup> fallback = new ArrayList<>();   // groups with no extension gate
+    private final WatchDirectoryTrie watchTrie;
+    private final boolean timeDependent;
+    private final long fingerprint;
+    private final ContentNeedles contentNeedles;
+    private final Map<NeatGroup, BitSet> contentIds = new IdentityHashMap<>();   // groups with content rules only
+    private final Set<NeatGroup> accessReaders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public GroupIndex(Collection<NeatGroup> groups){
+        this.allGroups = List.copyOf(groups);
+        this.watchTrie = new WatchDirectoryTrie(allGroups);
+        this.timeDependent = allGroups.stream().anyMatch(group -> group.getRules().stream().anyMatch(Rule::isTimeDependent));
+        this.fingerprint = fingerprint(allGroups);
+        List<Rule> allRules = new ArrayList<>();
+        allGroups.forEach(group -> allRules.addAll(group.getRules()));
+        this.contentNeedles = ContentNeedles.of(allRules);
+        for(NeatGroup group : allGroups){
+            if(group.getRules().stream().anyMatch(Rule::readsAccessTime)){
+                accessReaders.add(group);
+            }
+            BitSet ids = contentNeedles.idsOf(group.getRules());
+            if(!ids.isEmpty()){
+                contentIds.put(group, ids);
+            }
+        }
+        for(NeatGroup group : allGroups){
+            Set<String> gate = extensionGate(group);
+            if(gate == null){
+                fallback.add(group);
+                continue;
+            }
+            Set<String> keys = new HashSet<>();
+            for(String ext : gate){
+                keys.add(lastExtension(ext));
+            }
+            for(String key : keys){
+                byExtension.computeIfAbsent(key, k -> new ArrayList<>()).add(group);
+            }
+        }
+    }
+
+    // groups that watch the file's directory and are worth running rules against
+    public List<NeatGroup> candidates(FileContext file){
+        Set<NeatGroup> watching = watchTrie.groupsWatching(file.getPath());
+        if(watching.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<NeatGroup> gated = byExtension.get(file.getExtension());
+        List<NeatGroup> candidates = new ArrayList<>();
+        if(gated != null){
+            for(NeatGroup group : gated){
+                if(watching.contains(group)){
+                    candidates.add(group);
+                }
+            }
+        }
+        for(NeatGroup group : fallback){
+            if(watching.contains(group)){
+                candidates.add(group);
+            }
+        }
+        return candidates;
+    }
+
+    // text searches of all groups, so a file's text is extracted and scanned once however many groups look inside it
+    public ContentNeedles getContentNeedles(){
+        return contentNeedles;
+    }
+
+    // needles the given groups search for; the pass can stop once these are decided
+    public BitSet contentIdsOf(List<NeatGroup> groups){
+        BitSet wanted = new BitSet(contentNeedles.size());
+        for(NeatGroup group : groups){
+            BitSet ids = contentIds.get(group);
+            if(ids != null){
+                wanted.or(ids);
+            }
+        }
+        return wanted;
+    }
+
+    public boolean isWatched(Path file){
+        return watchTrie.isWatched(file);
+    }
+
+    // true if some rule's verdict can change without the file changing
+    public boolean hasTimeDependentRules(){
+        return timeDependent;
+    }
+
+    // true if a group that could match the file has a rule that reads its last access time
+    public boolean readsAccessTime(FileContext file){
+        if(accessReaders.isEmpty()){
+            return false;
+        }
+        for(NeatGroup group : candidates(file)){
+            if(accessReaders.contains(group)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // hash of what the groups say, not of when they were added: re-applying the same groups.json keeps it
+    public long getFingerprint(){
+        return fingerprint;
+    }
+
+    public List<NeatGroup> getGroups(){
+        return allGroups;
+    }
+
+    public int size(){
+        return allGroups.size();
+    }
+
+    // smallest extension set among the group's rules, since every rule has to pass
+    private static Set<String> extensionGate(NeatGroup group){
+        Set<String> smallest = null;
+        for(Rule rule : group.getRules()){
+            Set<String> gate = rule.extensionGate();
+            if(gate == null){
+                continue;
+            }
+            // an extension without a leading '.' is a plain suffix, which a last-dot key can't represent
+            if(gate.stream().anyMatch(ext -> !ext.startsWith("."))){
+                continue;
+            }
+            if(smallest == null || gate.size() < smallest.size()){
+                smallest = gate;
+            }
+        }
+        return smallest;
+    }
+
+    // order-independent: each group and rule is written out in its saved JSON form and sorted
+    private static long fingerprint(List<NeatGroup> groups){
+        TreeSet<String> canonical = new TreeSet<>();
+        for(NeatGroup group : groups){
+            TreeSet<String> parts = new TreeSet<>();
+            group.getRules().forEach(rule -> parts.add("rule " + rule.toJSON()));
+            group.getWatchDirectories().forEach(dir -> parts.add("watch " + dir));
+            canonical.add(group.getTargetDirectory() + " <- " + parts);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for(int i = 0; i < Long.BYTES; i++){
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);   // required on every JVM
+        }
+    }
+
+    // ".tar.gz" and "archive.tar.gz" both key on ".gz"
+    private static String lastExtension(String name){
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+}
@@ -0,0 +1,21 @@
+package organizer;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// What the engine decided for one file, worked out without moving anything
+public record MatchResult(Path file, Outcome outcome, Path targetFile, List<NeatGroup> matchedGroups) {
+
+    public enum Outcome {
+        NOT_WATCHED,   // outside every group's watch directories
+        MISSING,       // gone before it could be read
+        NO_MATCH,
+        CONFLICT,      // matched groups that disagree on the target directory
+        IN_PLACE,      // already where it would be moved
+        MOVE
+    }
+
+    public boolean isMove(){
+        return outcome == Outcome.MOVE;
+    }
+}
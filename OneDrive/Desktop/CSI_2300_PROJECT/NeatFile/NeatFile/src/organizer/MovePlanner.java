@@ -0,0 +1,287 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+import organizer.rule.ContentIndex;
+
+// Collects matched files into short batches per target directory. A batch creates its directory and
+// looks up its file store once, commits same-filesystem moves as atomic renames, and hands moves
+// across filesystems to a separate copy pool. Only one batch per directory runs at a time, so moves
+// onto the same target file still happen in the order they were matched.
+public class MovePlanner {
+    private static final Logger LOG = LogManager.getLogger(MovePlanner.class);
+    private static final int MAX_CACHED_STORES = 4096;
+
+    private final NeatFileLogic logic;
+    private final Consumer<Path> onDone;
+    private final int maxBatch;
+    private final long lingerMillis;
+    private final ExecutorService movePool;
+    private final ExecutorService copyPool;
+    private final ScheduledExecutorService timer;
+    private final Map<Path, DirectoryQueue> queues = new ConcurrentHashMap<>();
+    private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<Path, FileStore> stores = new ConcurrentHashMap<>();
+    private final CrossDeviceMover crossDevice = new CrossDeviceMover();
+    private final EngineMetrics metrics = EngineMetrics.shared();
+
+    private record PlannedMove(Path source, Path target) {
+    }
+
+    private static class DirectoryQueue {
+        private final Path directory;
+        private List<PlannedMove> pending = new ArrayList<>();
+        private boolean busy;   // a flush is scheduled or a batch is running
+
+        private DirectoryQueue(Path directory){
+            this.directory = directory;
+        }
+    }
+
+    // -Dneatfile.move.batchSize (default 256), -Dneatfile.move.lingerMillis (default 10),
+    // -Dneatfile.move.copyThreads (default 4) for moves that cross filesystems, further limited per device by CrossDeviceMover
+    public MovePlanner(NeatFileLogic logic, int moveThreads, Consumer<Path> onDone){
+        this.logic = logic;
+        this.onDone = onDone;
+        this.maxBatch = Math.max(1, Integer.getInteger("neatfile.move.batchSize", 256));
+        this.lingerMillis = Math.max(0, Long.getLong("neatfile.move.lingerMillis", 10));
+        this.movePool = Executors.newFixedThreadPool(Math.max(1, moveThreads), namedThreads("move"));
+        this.copyPool = Executors.newFixedThreadPool(Math.max(1, Integer.getInteger("neatfile.move.copyThreads", 4)), namedThreads("copy"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(namedThreads("move-batcher"));
+    }
+
+    public void enqueue(Path source, Path targetFile){
+        DirectoryQueue queue = queues.computeIfAbsent(targetFile.getParent(), DirectoryQueue::new);
+        synchronized (queue) {
+            queue.pending.add(new PlannedMove(source, targetFile));
+            if (queue.busy) {   // picked up by the scheduled flush or right after the running batch
+                return;
+            }
+            queue.busy = true;
+        }
+        try {
+            timer.schedule(() -> dispatch(queue), lingerMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            abandon(queue);
+        }
+    }
+
+    private void dispatch(DirectoryQueue queue){
+        List<PlannedMove> batch;
+        synchronized (queue) {
+            if (queue.pending.isEmpty()) {
+                queue.busy = false;
+                return;
+            }
+            if (queue.pending.size() <= maxBatch) {
+                batch = queue.pending;
+                queue.pending = new ArrayList<>();
+            } else {
+                List<PlannedMove> head = queue.pending.subList(0, maxBatch);
+                batch = new ArrayList<>(head);
+                head.clear();
+            }
+        }
+        try {
+            movePool.execute(() -> {
+                CompletableFuture<Void> done;
+                try {
+                    done = commit(queue.directory, batch);
+                } catch (RuntimeException e) {
+                    LOG.error("Move batch failed for {}", queue.directory, e);
+                    done = CompletableFuture.completedFuture(null);
+                }
+                done.whenComplete((result, error) -> dispatch(queue));   // next batch for this directory, if any
+            });
+        } catch (RejectedExecutionException e) {
+            batch.forEach(move -> onDone.accept(move.source()));
+            abandon(queue);
+        }
+    }
+
+    // runs one batch; the returned future completes once its cross-device copies are done too
+    private CompletableFuture<Void> commit(Path directory, List<PlannedMove> batch){
+        if (!ensureDirectory(directory)) {
+            for (PlannedMove move : batch) {
+                LOG.warn("Failed to move {} to {}: cannot create {}", move.source(), move.target(), directory);
+                metrics.moveFailed();
+                logic.recordFailedMove(move.source());
+                onDone.accept(move.source());
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        FileStore targetStore = store(directory);
+        Map<Path, CompletableFuture<Void>> copies = new HashMap<>();   // target file -> its last copy in this batch
+        for (PlannedMove move : batch) {
+            CompletableFuture<Void> earlier = copies.get(move.target());
+            if (earlier != null) {   // keep the order behind a copy onto the same name
+                copies.put(move.target(), earlier.thenRunAsync(() -> moveAcross(move), copyPool));
+            } else if (targetStore != null && targetStore.equals(store(move.source().getParent()))) {
+                rename(move);
+            } else {
+                copies.put(move.target(), CompletableFuture.runAsync(() -> moveAcross(move), copyPool));
+            }
+        }
+        return CompletableFuture.allOf(copies.values().toArray(new CompletableFuture<?>[0]));
+    }
+
+    // same filesystem: a single rename, falling back to a regular move where atomic renames can't replace
+    private void rename(PlannedMove move){
+        long start = System.nanoTime();
+        try {
+            try {
+                Files.move(move.source(), move.target(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                Files.move(move.source(), move.target(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            metrics.moveCompleted(System.nanoTime() - start);
+            ContentIndex.shared().moved(move.source(), move.target());   // same inode, its indexed text still holds
+            LOG.info("Moved {} to {}", move.source(), move.target());
+        } catch (NoSuchFileException e) {
+            if (Files.exists(move.source()) && retryAfterDirectoryVanished(move, start)) {
+                return;
+            }
+            LOG.debug("File no longer exists: {}", move.source());
+        } catch (IOException e) {
+            failed(move, e);
+        } finally {
+            onDone.accept(move.source());
+        }
+    }
+
+    // target directory was removed after we cached it: recreate it once and try again
+    private boolean retryAfterDirectoryVanished(PlannedMove move, long start){
+        Path directory = move.target().getParent();
+        knownDirectories.remove(directory);
+        if (!ensureDirectory(directory)) {
+            return false;
+        }
+        try {
+            Files.move(move.source(), move.target(), StandardCopyOption.REPLACE_EXISTING);
+            metrics.moveCompleted(System.nanoTime() - start);
+            ContentIndex.shared().moved(move.source(), move.target());
+            LOG.info("Moved {} to {}", move.source(), move.target());
+        } catch (IOException e) {
+            failed(move, e);
+        }
+        return true;
+    }
+
+    // different filesystem: copy, verify and delete through CrossDeviceMover
+    private void moveAcross(PlannedMove move){
+        long start = System.nanoTime();
+        try {
+            crossDevice.move(move.source(), move.target());
+            metrics.moveCompleted(System.nanoTime() - start);
+            ContentIndex.shared().remove(move.source());   // a copy is a new file; indexed again if it stays put
+            LOG.info("Moved {} to {}", move.source(), move.target());
+        } catch (NoSuchFileException e) {
+            LOG.debug("File no longer exists: {}", move.source());
+        } catch (IOException e) {
+            failed(move, e);
+        } finally {
+            onDone.accept(move.source());
+        }
+    }
+
+    private void failed(PlannedMove move, IOException e){
+        metrics.moveFailed();
+        LOG.warn("Failed to move {} to {}: {}", move.source(), move.target(), e.getMessage());
+        logic.recordFailedMove(move.source());   // so the scanner retries it even though it hasn't changed
+    }
+
+    private boolean ensureDirectory(Path directory){
+        if (knownDirectories.contains(directory)) {
+            return true;
+        }
+        try {
+            Files.createDirectories(directory);  // create if dir doesn't exist
+            knownDirectories.add(directory);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // null when the store can't be determined; such moves take the copy path, which works either way
+    private FileStore store(Path directory){
+        if (directory == null) {
+            return null;
+        }
+        FileStore store = stores.get(directory);
+        if (store == null) {
+            try {
+                store = Files.getFileStore(directory);
+            } catch (IOException e) {
+                return null;
+            }
+            if (stores.size() >= MAX_CACHED_STORES) {   // sources come from many subfolders, keep this bounded
+                stores.clear();
+            }
+            stores.put(directory, store);
+        }
+        return store;
+    }
+
+    // executors are gone (shutting down): drop what's queued, the scanner finds those files on the next start
+    private void abandon(DirectoryQueue queue){
+        List<PlannedMove> dropped;
+        synchronized (queue) {
+            dropped = queue.pending;
+            queue.pending = new ArrayList<>();
+            queue.busy = false;
+        }
+        dropped.forEach(move -> onDone.accept(move.source()));
+    }
+
+    public CrossDeviceMover getCrossDeviceMover(){
+        return crossDevice;
+    }
+
+    public void shutdown(){
+        for (ExecutorService pool : new ExecutorService[]{timer, movePool, copyPool}) {
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ThreadFactory namedThreads(String stage){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "neatfile-" + stage + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -13,13 +13,10 @@ import javafx.stage.Stage;
 
 import java.nio.file.*;             // java imports
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.io.FileWriter;
 import java.io.IOException;
 
-import org.json.JSONArray;             //json imports
-import org.json.JSONObject;
+import org.apache.logging.log4j.LogManager;   // engine logging
+
 
 import organizer.rule.FileCategoryRule;   // Rule imports
 import organizer.rule.FileExtensionRule;
@@ -30,14 +27,11 @@ import organizer.rule.StringContainedRule;
 
 public class NeatFileApp extends Application {
 
-    private NeatFileLogic organizer = new NeatFileLogic();
+    private NeatFileService service = new NeatFileService();   // engine, watcher and scanner; the UI only edits its config
     private NeatGroup currentGroup;
     private Set<Path> watchDirs = new HashSet<>();
-    private Path configPath = Paths.get("groups.json");
-    private WatchService watchService;
+    private Path configPath = GroupConfig.DEFAULT_PATH;
     private List<NeatGroup> groups = new ArrayList<>();
-    private Thread watchServiceThread;
-    private volatile boolean running = true;
 
     //UI elements
     private ListView<String> watchDirsListView;
@@ -242,24 +236,9 @@ public class NeatFileApp extends Application {
         // Load existing groups from json
         groups.clear();
         try {
-            String content = Files.readString(configPath);
-            JSONArray jsonGroups = new JSONArray(content);
-            for (int i = 0; i < jsonGroups.length(); i++) {
-                JSONObject jsonGroup = jsonGroups.getJSONObject(i);
-                Set<Path> watchDirs = new HashSet<>(jsonGroup.getJSONArray("watchDirectories")
-                        .toList().stream().map(Object::toString).map(Paths::get).toList());
-                Path targetDir = Paths.get(jsonGroup.getString("targetDirectory"));
-
-                NeatGroup group = new NeatGroup(watchDirs, targetDir);
+            for (NeatGroup group : GroupConfig.load(configPath)) {
                 groups.add(group);
-
-                JSONArray jsonRules = jsonGroup.getJSONArray("rules");
-                for (int j = 0; j < jsonRules.length(); j++) {
-                    Rule rule = Rule.fromJSON(jsonRules.getJSONObject(j));
-                    group.addRule(rule);
-                }
-
-                this.watchDirs.addAll(watchDirs);
+                this.watchDirs.addAll(group.getWatchDirectories());
             }
         } catch (IOException e) {
             System.out.println("No existing groups.json found or failed to load: " + e.getMessage());
@@ -268,19 +247,11 @@ public class NeatFileApp extends Application {
         // Populate group dropdown
         updateGroupComboBox();
 
-        try {
-            watchService = FileSystems.getDefault().newWatchService();
-        } catch (IOException e) {
-            System.err.println("Failed to create WatchService: " + e.getMessage());
-            return;
-        }
-
         primaryStage.setScene(scene);
         primaryStage.setTitle("NeatFile");
         primaryStage.show();
 
-        startFileWatcher();
-        startManualScanner();
+        service.start();
         primaryStage.setOnCloseRequest(e -> shutdown());
     }
 
@@ -505,160 +476,26 @@ public class NeatFileApp extends Application {
     }
 
     private void finalizeGroups() {
-        organizer.clearGroups();
-        
-        JSONArray jsonGroups = new JSONArray();
-        for (NeatGroup group : groups) {
-            JSONObject json = new JSONObject();
-            json.put("watchDirectories", group.getWatchDirectories().stream().map(Path::toString).toList());
-
-            Path targetDir = group.getTargetDirectory();        // null check for target directory
-            if (targetDir == null) {
-                System.err.println("Skipping group with no target directory");
-                continue; 
-            }
-            
-            json.put("targetDirectory", group.getTargetDirectory().toString());
-            json.put("rules", group.getRules().stream().map(Rule::toJSON).toList());
-            jsonGroups.put(json);
-        }
-        try (FileWriter file = new FileWriter("groups.json")) {
-            file.write(jsonGroups.toString(2));
-            System.out.println("Groups successfully saved to groups.json");
-        } catch (IOException e) {
-            System.err.println("Failed to write to groups.json: " + e.getMessage());
-            e.printStackTrace();
-        }
-
-        for(NeatGroup group : groups) {
-            if(!organizer.addGroup(group)){
-                System.out.println("Failed to add group to Organizer: " + group);
-            };
-        }
-
-        updateWatchDirectories(watchService);
-    }
-
-    private void startFileWatcher() {
-        watchServiceThread = new Thread(() -> {
-            try {
-                watchService = FileSystems.getDefault().newWatchService();
-                updateWatchDirectories(watchService);
-
-                while (running && !Thread.currentThread().isInterrupted()) {
-                    try {
-                        WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
-                        if (key != null) {
-                            for (WatchEvent<?> event : key.pollEvents()) {
-                                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE ||
-                                        event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
-                                    Path fileName = (Path) event.context();
-                                    Path dir = (Path) key.watchable();
-                                    Path fullPath = dir.resolve(fileName);
-                                    
-                                    System.out.println("Detected change in directory: " + dir);
-                                    System.out.println("Full file path: " + fullPath);
-                                    
-                                    organizer.processFile(fullPath);
-                                }
-                            }
-                            key.reset();
-                        }
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-                watchService.close();
-            } catch (IOException e) {
-                if (running) {
-                    System.err.println("WatchService error: " + e.getMessage());
-                }
-            } finally {
-                try {
-                    if (watchService != null) {
-                        watchService.close();
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to close WatchService: " + e.getMessage());
-                }
+        // written in the background so the UI never waits on the disk
+        GroupConfig.saveAsync(configPath, groups).whenComplete((done, e) -> {
+            if (e == null) {
+                System.out.println("Groups successfully saved to " + configPath);
+            } else {
+                System.err.println("Failed to write to " + configPath + ": " + e.getMessage());
+                e.printStackTrace();
             }
         });
-        watchServiceThread.setDaemon(true);
-        watchServiceThread.start();
-    }
 
-    private void startManualScanner() {
-        Thread manualScannerThread = new Thread(() -> {
-            while (running) {
-                try {
-                    for (NeatGroup group : groups) {
-                        for (Path dir : group.getWatchDirectories()) {
-                            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-                                for (Path file : stream) {
-                                    if (Files.isRegularFile(file)) {
-                                        System.out.println("[Manual Scan] Checking file: " + file);
-                                        organizer.processFile(file);
-                                    }
-                                }
-                            } catch (IOException e) {
-                                System.out.println("Failed to scan folder: " + dir + " - " + e.getMessage());
-                            }
-                        }
-                    }
-    
-                    Thread.sleep(5000); // 5 seconds between scans
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
-    
-        manualScannerThread.setDaemon(true);
-        manualScannerThread.start();
-    }
-    
-
-    private void updateWatchDirectories(WatchService watchService) {
-        try {
-            System.out.println("Updating watcher with directories:");
-
-            Set<Path> allDirs = groups.stream()
-            .flatMap(g -> g.getWatchDirectories().stream())
-            .collect(Collectors.toSet());
-            for (Path dir : allDirs) {
-                if (Files.isDirectory(dir)) {
-                    dir.register(watchService,
-                            StandardWatchEventKinds.ENTRY_CREATE,
-                            StandardWatchEventKinds.ENTRY_MODIFY);
-                    System.out.println("Registered watch directory: " + dir);
-                } else {
-                    System.out.println("Skipping watch directory: " + dir);
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error updating watch directories: " + e.getMessage());
-        }
+        List<NeatGroup> complete = groups.stream()
+        .filter(g -> g.getTargetDirectory() != null)   // same groups that were saved
+        .toList();
+        service.applyGroups(complete);
     }
 
     private void shutdown() {
-        running = false;
-        if (watchServiceThread != null) {
-            watchServiceThread.interrupt();
-            try {
-                watchServiceThread.join();
-            } catch (InterruptedException e) {
-                System.err.println("Interrupted while shutting down: " + e.getMessage());
-            }
-        }
-        try {
-            if (watchService != null) {
-                watchService.close();
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to close WatchService: " + e.getMessage());
-        }
+        service.shutdown();
+        GroupConfig.flush(5000);   // the last Finalize may still be on its way to disk
+        LogManager.shutdown();   // flush the engine's async log queue before the JVM exits
     }
     public static void main(String[] args) {
         launch(args);
@@ -0,0 +1,56 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Headless entry point: loads groups.json and runs the watcher and scanner without JavaFX.
+// Meant for servers, e.g.
+//   java -Xmx64m -XX:+UseSerialGC -XX:TieredStopAtLevel=1 -cp "bin:lib/*" organizer.NeatFileDaemon [groups.json]
+// Edit the configuration with NeatFileApp and restart the daemon to pick it up.
+public class NeatFileDaemon {
+    private static final Logger LOG = LogManager.getLogger(NeatFileDaemon.class);
+
+    public static void main(String[] args) {
+        Path configPath = args.length > 0 ? Paths.get(args[0]) : GroupConfig.DEFAULT_PATH;
+        List<NeatGroup> groups;
+        try {
+            groups = GroupConfig.load(configPath);
+        } catch (IOException e) {
+            LOG.error("Failed to load {}: {}", configPath, e.getMessage());
+            LogManager.shutdown();
+            System.exit(1);
+            return;
+        }
+        if (groups.isEmpty()) {
+            LOG.error("No groups configured in {}, nothing to do", configPath);
+            LogManager.shutdown();
+            System.exit(1);
+            return;
+        }
+
+        NeatFileService service = new NeatFileService();
+        List<NeatGroup> rejected = service.applyGroups(groups);
+        LOG.info("Loaded {} of {} groups from {}, watching {} directories",
+            groups.size() - rejected.size(), groups.size(), configPath, service.getWatchDirectories().size());
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {   // Ctrl+C / SIGTERM
+            LOG.info("Shutting down NeatFile daemon");
+            service.shutdown();
+            LogManager.shutdown();   // flush the async log queue; log4j2.xml leaves this to us
+            stopped.countDown();
+        }, "neatfile-shutdown"));
+
+        service.start();
+        try {
+            stopped.await();   // worker threads are daemons, so keep the JVM alive here
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
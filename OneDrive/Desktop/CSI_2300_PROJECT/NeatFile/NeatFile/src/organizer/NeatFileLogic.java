@@ -1,98 +1,294 @@
 package organizer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+import organizer.rule.ContentIndex;
+import organizer.rule.ContentNeedles;
+import organizer.rule.FileContext;
 
 public class NeatFileLogic {
-    private final Object fileProcessingLock = new Object();
+    private static final Logger LOG = LogManager.getLogger(NeatFileLogic.class);
     private final Set<NeatGroup> groups = Collections.synchronizedSet(new HashSet<>());
+    private final FilePipeline pipeline;
+    private volatile GroupIndex index = GroupIndex.EMPTY;
+    private final AtomicLong configVersion = new AtomicLong();
+    private final Queue<Path> failedMoves = new ConcurrentLinkedQueue<>();
+    private final DecisionCache decisions = new DecisionCache();
+
+    public NeatFileLogic(){
+        this(PipelineConfig.fromSystemProperties());
+    }
+
+    public NeatFileLogic(PipelineConfig config){
+        this.pipeline = new FilePipeline(this, config);
+    }
 
     public boolean addGroup(NeatGroup group){
 
         // checks for conflicting target directories for same rules and watch directories
-        for(NeatGroup existing : groups){
-            if(existing.getRules().equals(group.getRules()) &&
-            existing.getWatchDirectories().equals(group.getWatchDirectories()) &&
-            !existing.getTargetDirectory().equals(group.getTargetDirectory())){
-            
-            System.out.println("Error: A group with the same rules and watch directories but different target (" + 
-                existing.getTargetDirectory() + " vs. " + group.getTargetDirectory() + ") already exists!");
+        if(conflictsWith(groups, group)){
             return false;
-            }
         }
 
        // checks for EXACT duplicate group
         if(groups.contains(group)){
-            System.out.println("Error: A group with the same rules, watch directories, and target already exists!");
+            LOG.warn("A group with the same rules, watch directories, and target already exists!");
             return false;
         }
+        group.compile();
         groups.add(group);
+        rebuildIndex();
         return true;
     }
     
+    // hands the file to the staged pipeline; matching and moving happen on its worker pools
     public void processFile(Path file){
-        synchronized(fileProcessingLock){       // ensures files are processed one at a time
+        pipeline.submit(file, null);
+    }
 
-        System.out.println("Processing file: " + file);
-    
+    // same, for callers (like a directory walk) that already hold the file's attributes
+    public void processFile(Path file, BasicFileAttributes attributes){
+        pipeline.submit(file, attributes);
+    }
+
+    // detect stage: is the file inside any group's watch directories
+    boolean isWatched(Path file){
+        return index.isWatched(file);
+    }
+
+    // stat stage: the one attribute read every rule shares, null when the file is gone
+    FileContext stat(Path file, BasicFileAttributes seeded){
+        FileContext context = seeded != null ? FileContext.of(file, seeded) : FileContext.of(file);
+        if (!context.exists()) {
+            LOG.debug("File no longer exists: {}", file);
+            return null;
+        }
+        return context;
+    }
+
+    // content rules of the file's candidate groups would open it, so it's matched on the content stage
+    boolean needsContent(FileContext context){
+        GroupIndex current = index;
+        return !current.getContentNeedles().isEmpty()
+            && ContentNeedles.canSearch(context.getLowerName())
+            && !current.contentIdsOf(current.candidates(context)).isEmpty();
+    }
+
+    // match stage: returns the file's destination, or null when it should stay put
+    Path resolveTarget(FileContext context){
+        Path file = context.getPath();
+        GroupIndex current = index;
+        EngineMetrics metrics = EngineMetrics.shared();
+        MatchResult.Outcome earlier = decisions.lookup(context, current);
+        if (earlier != null) {   // unchanged file, same groups: it stays put again
+            metrics.decisionReused();
+            LOG.debug("Unchanged since last decision ({}): {}", earlier, file);
+            return null;
+        }
+        LOG.debug("Processing file: {}", file);
+
+        MatchResult result = plan(context, current);
+        if (!result.isMove()) {
+            decisions.remember(context, current, result.outcome());
+            ContentIndex.shared().indexLater(file);   // staying put: index it so later content rules can skip it
+        }
+        switch (result.outcome()) {
+            case MOVE -> metrics.fileMatched();
+            case NO_MATCH -> {
+                metrics.fileUnmatched();
+                LOG.debug("No matching group for: {}", file);
+            }
+            case CONFLICT -> {
+                metrics.conflict();
+                LOG.warn("Conflict: File {} matches multiple groups with different targets: {}", file,
+                    result.matchedGroups().stream()
+                        .map(g -> g.getTargetDirectory().toString())
+                        .collect(Collectors.joining(", ")));
+            }
+            case IN_PLACE -> {
+                metrics.fileMatched();
+                LOG.debug("Skipping move — file already in target location: {}", file);
+            }
+            default -> { }
+        }
+        return result.isMove() ? result.targetFile() : null;
+    }
+
+    // runs the full matching path for one file, conflict checks included, without moving it (dry runs)
+    public MatchResult evaluate(Path file, BasicFileAttributes attributes){
+        if (!isWatched(file)) {
+            return new MatchResult(file, MatchResult.Outcome.NOT_WATCHED, null, List.of());
+        }
+        FileContext context = attributes != null ? FileContext.of(file, attributes) : FileContext.of(file);
+        if (!context.exists()) {
+            return new MatchResult(file, MatchResult.Outcome.MISSING, null, List.of());
+        }
+        return plan(context, index);
+    }
+
+    // which groups take the file and where it would go; shared by the pipeline and dry runs
+    private MatchResult plan(FileContext context, GroupIndex groupIndex){
+        Path file = context.getPath();
         List<NeatGroup> matchingGroups = new ArrayList<>(); 
-        for(NeatGroup group : groups) {    // check if file is in one of group's watch directories + satisfies all group criteria
-            boolean inWatchDir = group.getWatchDirectories().stream().anyMatch(watchDir -> file.startsWith(watchDir));
-            if (inWatchDir && group.matches(file)){
+        List<NeatGroup> candidates = groupIndex.candidates(context);
+        if (!groupIndex.getContentNeedles().isEmpty()) {   // content rules of all candidates share one extraction and pass
+            context.shareContent(groupIndex.getContentNeedles(), groupIndex.contentIdsOf(candidates));
+        }
+        for(NeatGroup group : candidates) {    // candidates already watch the file's directory, check group criteria
+            if (group.matches(context)){
                 matchingGroups.add(group);     
             }
         }
         if (matchingGroups.isEmpty()){  // no match
-            System.out.println("No matching group for: " + file);
-            return;
+            return new MatchResult(file, MatchResult.Outcome.NO_MATCH, null, matchingGroups);
         }
         if (matchingGroups.size() > 1 ) {  // checks if matching groups have same target directory
             Path target = matchingGroups.get(0).getTargetDirectory();
             boolean conflict = matchingGroups.stream().anyMatch(g -> !g.getTargetDirectory().equals(target));
             if (conflict) {
-                System.out.println("Conflict: File "+ file + " matches multiple groups with different targets: " + 
-                    matchingGroups.stream()
-                        .map(g -> g.getTargetDirectory().toString())
-                        .collect(Collectors.joining(", ")));
-                return; // then don't move file
+                return new MatchResult(file, MatchResult.Outcome.CONFLICT, null, matchingGroups); // then don't move file
             }    
         }
 
 // moves file to target of first matching group                          
         NeatGroup group = matchingGroups.get(0);
-        Path targetDir = group.getTargetDirectory();
-        Path targetFile = targetDir.resolve(file.getFileName());
+        Path targetFile = group.getTargetDirectory().resolve(file.getFileName());
         
         // check file already in target directory
         if (file.equals(targetFile)) {
-            System.out.println("Skipping move — file already in target location: " + file);
-            return;
+            return new MatchResult(file, MatchResult.Outcome.IN_PLACE, targetFile, matchingGroups);
         }
+        return new MatchResult(file, MatchResult.Outcome.MOVE, targetFile, matchingGroups);
+    }
+
+    // move stage reports files it couldn't move, so the scanner retries them even though they haven't changed
+    void recordFailedMove(Path file){
+        decisions.forget(file);
+        failedMoves.add(file);
+    }
 
-        if (!Files.exists(file)) {
-            System.out.println("File no longer exists: " + file);
-            return;
+    // swaps in a whole new configuration with one index rebuild. Groups equal to one already running are kept
+    // as they are (compiled rules, statistics and all); only new ones are compiled. When nothing changed the
+    // configuration version stays put, so cached decisions and the scanner's snapshot remain valid.
+    // Returns the groups it refused (conflicts or duplicates), same checks as addGroup.
+    public List<NeatGroup> replaceGroups(Collection<NeatGroup> replacement) {
+        List<NeatGroup> rejected = new ArrayList<>();
+        List<NeatGroup> accepted = new ArrayList<>();
+        Map<List<Set<?>>, NeatGroup> bySources = new HashMap<>();   // rules + watch directories, hashed once each
+        for (NeatGroup group : replacement) {
+            NeatGroup existing = bySources.putIfAbsent(List.of(group.getRules(), group.getWatchDirectories()), group);
+            if (existing == null) {
+                accepted.add(group);
+            } else if (Objects.equals(existing.getTargetDirectory(), group.getTargetDirectory())) {
+                LOG.warn("A group with the same rules, watch directories, and target already exists!");
+                rejected.add(group);
+            } else {
+                LOG.warn("A group with the same rules and watch directories but different target ({} vs. {}) already exists!",
+                    existing.getTargetDirectory(), group.getTargetDirectory());
+                rejected.add(group);
+            }
         }
 
-        try {
-            Files.createDirectories(targetDir);  // create if dir doesn't exist
-            Files.move(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("Moved " + file + " to " + targetFile);
-        } catch (IOException e) {
-            System.out.println("Failed to move " + file + " to " + targetFile + ": " + e.getMessage());
+        synchronized(groups){
+            Map<NeatGroup, NeatGroup> running = new HashMap<>();
+            for (NeatGroup existing : groups) {
+                running.put(existing, existing);
+            }
+            Set<NeatGroup> next = new HashSet<>();
+            int compiled = 0;
+            for (NeatGroup group : accepted) {
+                NeatGroup kept = running.get(group);
+                if (kept == null) {
+                    group.compile();
+                    kept = group;
+                    compiled++;
+                }
+                next.add(kept);
+            }
+            if (next.equals(groups)) {
+                return rejected;
+            }
+            LOG.info("Applying {} groups ({} new or changed, {} removed)",
+                next.size(), compiled, groups.size() - (next.size() - compiled));
+            groups.clear();
+            groups.addAll(next);
+            rebuildIndex();
         }
+        return rejected;
+    }
 
+    private static boolean conflictsWith(Collection<NeatGroup> accepted, NeatGroup group) {
+        for (NeatGroup existing : accepted) {
+            if (existing.getRules().equals(group.getRules()) &&
+                existing.getWatchDirectories().equals(group.getWatchDirectories()) &&
+                !existing.getTargetDirectory().equals(group.getTargetDirectory())) {
+                LOG.warn("A group with the same rules and watch directories but different target ({} vs. {}) already exists!",
+                    existing.getTargetDirectory(), group.getTargetDirectory());
+                return true;
+            }
         }
+        return false;
     }
 
     public void clearGroups() {
         groups.clear();
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        synchronized(groups){
+            index = new GroupIndex(groups);
+            configVersion.incrementAndGet();
+        }
+    }
+
+    // bumped on every group change, so callers can drop state derived from the old configuration
+    public long getConfigVersion() {
+        return configVersion.get();
+    }
+
+    public List<NeatGroup> getGroups() {
+        return index.getGroups();
+    }
+
+    public boolean hasTimeDependentRules() {
+        return index.hasTimeDependentRules();
+    }
+
+    // files submitted but not yet matched and moved (or dropped)
+    public int pendingCount() {
+        return pipeline.inFlightCount();
+    }
+
+    // counters, latencies and gauges for the whole engine; also published over JMX as organizer:type=EngineMetrics
+    public EngineMetrics getMetrics() {
+        return EngineMetrics.shared();
+    }
+
+    // next file whose move failed since the last call, or null
+    public Path pollFailedMove() {
+        return failedMoves.poll();
+    }
+
+    public void shutdown() {
+        pipeline.shutdown();
+        ContentIndex.shared().flush();
     }
 }
 
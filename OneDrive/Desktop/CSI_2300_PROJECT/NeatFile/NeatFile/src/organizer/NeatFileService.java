@@ -0,0 +1,354 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+import organizer.rule.ContentIndex;
+
+// The engine without any UI: owns NeatFileLogic plus the watcher and scanner threads that feed it.
+// NeatFileApp and NeatFileDaemon are both thin front ends over this class.
+// The watcher thread only drains WatchKeys into a bounded queue, which a dispatcher thread works off. When events
+// are lost (an OVERFLOW from the WatchService, or the queue is full) just that directory is rescanned, and what
+// it finds still settles in the EventCoalescer. The full scanner pass is only a slow safety net behind the watcher.
+public class NeatFileService {
+    private static final Logger LOG = LogManager.getLogger(NeatFileService.class);
+    private static final long WAKE_MILLIS = 250;   // how quickly the scanner thread notices rescan requests
+    private final NeatFileLogic organizer;
+    private final DirectoryScanner scanner;
+    private final EventCoalescer coalescer;
+    private final long scanIntervalMillis;
+    private final long retryIntervalMillis;
+    private final BlockingQueue<WatchSignal> events;   // watcher -> dispatcher
+    private final BlockingQueue<Path> rescans = new LinkedBlockingQueue<>();
+    private final Set<Path> rescanPending = ConcurrentHashMap.newKeySet();
+    private volatile boolean fullScanRequested = true;
+    private volatile boolean watcherDown;
+    private volatile Set<Path> watchDirectories = Set.of();
+    private final Object watchLock = new Object();   // watchDirectories vs. what the registry has been told
+    private CompletableFuture<?> watchUpdates = CompletableFuture.completedFuture(null);   // guarded by watchLock
+    private volatile WatchService watchService;
+    private volatile WatchRegistry watchRegistry;
+    private Thread watchServiceThread;
+    private Thread dispatcherThread;
+    private Thread scannerThread;
+    private volatile boolean running;
+    private final EngineMetrics metrics = EngineMetrics.shared();
+    private final LongSupplier coalescing;
+    private final LongSupplier watchedDirectories = () -> {
+        WatchRegistry registry = watchRegistry;
+        return registry != null ? registry.size() : 0;
+    };
+    private final LongSupplier watchQueue;
+
+    private record WatchSignal(WatchEvent.Kind<?> kind, Path path) {
+    }
+
+    // -Dneatfile.scan.intervalMillis (default 60000) sets the pause between full scanner passes,
+    // -Dneatfile.scan.retryMillis (default 5000) how often failed moves are retried (and the full pass interval
+    // while there is no working WatchService), -Dneatfile.watch.queueCapacity (default 8192) the watcher's queue
+    public NeatFileService(){
+        this(new NeatFileLogic());
+    }
+
+    public NeatFileService(NeatFileLogic organizer){
+        this.organizer = organizer;
+        this.coalescer = new EventCoalescer(organizer);
+        this.scanner = new DirectoryScanner(organizer, coalescer);
+        this.scanIntervalMillis = Long.getLong("neatfile.scan.intervalMillis", 60_000);
+        this.retryIntervalMillis = Long.getLong("neatfile.scan.retryMillis", 5000);
+        this.events = new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger("neatfile.watch.queueCapacity", 8192)));
+        this.watchQueue = events::size;
+        this.coalescing = coalescer::pendingCount;   // files waiting for writes to settle count towards the queue
+        metrics.addGauge(EngineMetrics.QUEUE_DEPTH, coalescing);
+        metrics.addGauge(EngineMetrics.WATCHED_DIRECTORIES, watchedDirectories);
+        metrics.addGauge(EngineMetrics.WATCH_QUEUE, watchQueue);
+    }
+
+    public NeatFileLogic getLogic(){
+        return organizer;
+    }
+
+    // replaces the engine's groups; returns the groups it refused (conflicts or duplicates). Applied as a diff:
+    // unchanged groups keep their compiled rules, only new watch roots are walked and registered, and the keys of
+    // roots no longer in use are cancelled. The old configuration stays live until the new one is swapped in.
+    public synchronized List<NeatGroup> applyGroups(Collection<NeatGroup> groups){
+        List<NeatGroup> copies = new ArrayList<>();
+        Map<NeatGroup, NeatGroup> originals = new IdentityHashMap<>();
+        for (NeatGroup group : groups) {
+            NeatGroup copy = group.copy();   // the caller (e.g. the UI) keeps editing its own instances
+            copies.add(copy);
+            originals.put(copy, group);
+        }
+        long version = organizer.getConfigVersion();
+        List<NeatGroup> rejected = new ArrayList<>();
+        for (NeatGroup copy : organizer.replaceGroups(copies)) {
+            LOG.warn("Failed to add group to Organizer: {}", copy);
+            rejected.add(originals.get(copy));
+        }
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (NeatGroup group : organizer.getGroups()) {
+            dirs.addAll(group.getWatchDirectories());
+        }
+        synchronized (watchLock) {
+            Set<Path> previous = watchDirectories;
+            watchDirectories = Set.copyOf(dirs);
+            updateWatchDirectories(previous);
+        }
+        if (organizer.getConfigVersion() != version) {
+            fullScanRequested = true;   // new rules: every file deserves another look
+        }
+        return rejected;
+    }
+
+    public Set<Path> getWatchDirectories(){
+        return watchDirectories;
+    }
+
+    public synchronized void start(){
+        if (running) {
+            return;
+        }
+        running = true;
+        startFileWatcher();
+        startDispatcher();
+        startScanner();
+    }
+
+    private void startFileWatcher() {
+        watchServiceThread = new Thread(() -> {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                synchronized (watchLock) {   // an applyGroups racing with startup either lands before this or diffs after it
+                    watchRegistry = new WatchRegistry(watchService);
+                    updateWatchDirectories(Set.of());
+                }
+
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                        while (key != null) {   // every key that is ready, before waiting again
+                            queueEvents(key);
+                            key = watchService.poll();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    watcherDown = true;   // the scanner falls back to frequent full passes
+                    LOG.error("WatchService error: {}", e.getMessage());
+                }
+            } finally {
+                closeWatchService();
+            }
+        }, "neatfile-watcher");
+        watchServiceThread.setDaemon(true);
+        watchServiceThread.start();
+    }
+
+    // never blocks: the key is reset right away so the kernel keeps collecting, and anything that doesn't fit
+    // in the queue is covered by a rescan of its directory
+    private void queueEvents(WatchKey key){
+        Path dir = (Path) key.watchable();
+        boolean lost = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            metrics.eventReceived();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                metrics.watchOverflow();
+                lost = true;
+                continue;
+            }
+            if (!events.offer(new WatchSignal(event.kind(), dir.resolve((Path) event.context())))) {
+                metrics.watchEventDropped();
+                lost = true;
+            }
+        }
+        if (!key.reset()) {   // directory deleted or unmounted
+            watchRegistry.invalidated(key);
+        } else if (lost) {
+            requestRescan(dir);
+        }
+    }
+
+    private void requestRescan(Path dir){
+        if (rescanPending.add(dir)) {
+            LOG.debug("Events lost for {}, rescanning it", dir);
+            rescans.add(dir);
+        }
+    }
+
+    private void startDispatcher() {
+        dispatcherThread = new Thread(() -> {
+            while (running) {
+                try {
+                    WatchSignal signal = events.poll(1, TimeUnit.SECONDS);
+                    if (signal != null) {
+                        dispatch(signal);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to handle watch event", e);
+                }
+            }
+        }, "neatfile-watch-dispatch");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    private void dispatch(WatchSignal signal){
+        Path fullPath = signal.path();
+        if (signal.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            if (watchRegistry.isRegistered(fullPath)) {   // a watched subfolder went away
+                watchRegistry.unregisterTree(fullPath);
+            } else {
+                ContentIndex.shared().remove(fullPath);
+            }
+            return;
+        }
+        if (signal.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory(fullPath, LinkOption.NOFOLLOW_LINKS)) {
+            // watch the new subfolder too, and pick up anything already copied into it
+            watchRegistry.registerTreeAsync(fullPath, coalescer::onEvent);
+        }
+
+        LOG.debug("Detected change in directory {}: {}", fullPath.getParent(), fullPath);
+
+        coalescer.onEvent(fullPath);   // released to the engine once it stops changing
+    }
+
+    private void startScanner() {
+        scannerThread = new Thread(() -> {
+            long nextFullScan = 0;
+            long nextRetry = 0;
+            while (running) {
+                try {
+                    long now = System.currentTimeMillis();
+                    if (fullScanRequested || now >= nextFullScan) {
+                        fullScanRequested = false;
+                        scanner.scan(watchDirectories);   // only new or changed files reach the engine
+                        nextFullScan = now + (watcherDown ? retryIntervalMillis : scanIntervalMillis);
+                        nextRetry = now + retryIntervalMillis;
+                    } else if (now >= nextRetry) {
+                        scanner.retryFailedMoves();
+                        nextRetry = now + retryIntervalMillis;
+                    }
+
+                    Path dir = rescans.poll(WAKE_MILLIS, TimeUnit.MILLISECONDS);
+                    while (dir != null) {   // folders the watcher lost events for
+                        rescanPending.remove(dir);
+                        metrics.directoryRescanned();
+                        scanner.rescan(dir);
+                        dir = rescans.poll();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }, "neatfile-scanner");
+        scannerThread.setDaemon(true);
+        scannerThread.start();
+    }
+
+    // call with watchLock held. Registers watch roots that weren't in previous along with their subfolders, handing
+    // the files found on the way to the coalescer, and cancels the keys of roots that were dropped, except for folders
+    // another root still covers. The walks run off the caller's thread but one after another, so a later change
+    // never overtakes an earlier one.
+    private void updateWatchDirectories(Set<Path> previous) {
+        WatchRegistry registry = watchRegistry;
+        if (registry == null) {   // watcher thread not up yet, it registers everything when it starts
+            return;
+        }
+        Set<Path> current = watchDirectories;
+        for (Path dir : previous) {
+            if (!current.contains(dir) && current.stream().noneMatch(dir::startsWith)) {
+                queueWatchUpdate(() -> {   // cheap, runs on whichever thread finished the previous update
+                    LOG.info("Stopped watching directory: {} ({} folders)", dir, registry.unregisterTree(dir, current));
+                    return CompletableFuture.completedFuture(null);
+                });
+            }
+        }
+        for (Path dir : current) {
+            if (previous.contains(dir)) {
+                continue;
+            }
+            queueWatchUpdate(() -> {
+                long start = System.nanoTime();
+                return registry.registerTreeAsync(dir, coalescer::onEvent).thenAccept(count -> LOG.info(
+                    "Registered watch directory: {} ({} folders in {} ms)",
+                    dir, count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            });
+        }
+    }
+
+    private void queueWatchUpdate(Supplier<CompletableFuture<?>> update){
+        watchUpdates = watchUpdates.thenCompose(done -> update.get()).exceptionally(e -> {
+            LOG.warn("Failed to update watch directories: {}", e.getMessage());   // keep the chain going
+            return null;
+        });
+    }
+
+    private void closeWatchService(){
+        try {
+            WatchService service = watchService;
+            if (service != null) {
+                service.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to close WatchService: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        for (Thread thread : new Thread[]{watchServiceThread, dispatcherThread, scannerThread}) {
+            if (thread == null) {
+                continue;
+            }
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while shutting down: {}", e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeWatchService();
+        metrics.removeGauge(EngineMetrics.QUEUE_DEPTH, coalescing);
+        metrics.removeGauge(EngineMetrics.WATCHED_DIRECTORIES, watchedDirectories);
+        metrics.removeGauge(EngineMetrics.WATCH_QUEUE, watchQueue);
+        coalescer.shutdown();
+        if (watchRegistry != null) {
+            watchRegistry.shutdown();
+        }
+        organizer.shutdown();
+    }
+}
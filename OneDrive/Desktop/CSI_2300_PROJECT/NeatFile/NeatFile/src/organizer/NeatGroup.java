@@ -1,14 +1,59 @@
 package organizer;
 
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import organizer.metrics.EngineMetrics;
+import organizer.metrics.LatencyHistogram;
+import organizer.rule.FileContext;
 import organizer.rule.Rule;
+import organizer.rule.RuleMatcher;
+import organizer.rule.RuleStats;
 
 public class NeatGroup {
     private Set<Rule> rules;
     private Set<Path> watchDirectories;
     private Path targetDirectory;
+    private static final int REORDER_INTERVAL = 256;   // group evaluations between re-rankings
+    private static final int TIMING_SAMPLE_MASK = 7;    // time one in eight evaluations of each rule
+
+    private volatile CompiledRule[] compiledRules;   // built by compile(), dropped when rules change, kept cheapest-first
+    private final AtomicLong evaluations = new AtomicLong();
+
+    private static class CompiledRule {
+        private final Rule rule;
+        private final RuleMatcher matcher;
+        private final RuleStats stats;
+        private final LatencyHistogram latency;   // shared by every rule of the same type
+        private final AtomicLong calls = new AtomicLong();
+
+        private CompiledRule(Rule rule){
+            this.rule = rule;
+            this.matcher = rule.compile();
+            this.stats = new RuleStats(rule.cost());
+            this.latency = EngineMetrics.shared().ruleLatency(rule.getClass().getSimpleName());
+        }
+
+        private boolean matches(FileContext file){
+            boolean passed;
+            if((calls.getAndIncrement() & TIMING_SAMPLE_MASK) == 0){
+                long start = System.nanoTime();
+                passed = matcher.matches(file);
+                long nanos = System.nanoTime() - start;
+                stats.recordTiming(nanos);
+                latency.record(nanos);
+            } else {
+                passed = matcher.matches(file);
+            }
+            stats.recordEvaluation(passed);
+            return passed;
+        }
+    }
 
     public NeatGroup(Set<Path> watchDirectories, Path targetDirectory){
         this.rules = new HashSet<>();
@@ -16,20 +61,94 @@ public class NeatGroup {
         this.targetDirectory = targetDirectory;
     }
 
+    // same rules, watch directories and target, without this group's compiled rules or statistics
+    public NeatGroup copy(){
+        NeatGroup copy = new NeatGroup(watchDirectories, targetDirectory);
+        copy.rules.addAll(rules);
+        return copy;
+    }
+
     public void addRule(Rule rule){
         rules.add(rule);  
+        compiledRules = null;
     }
 
     public void removeRule(Rule rule){
         rules.remove(rule);
+        compiledRules = null;
     }
 
     public void addWatchDirectory(Path directory){
         watchDirectories.add(directory);
     }
 
+    // precompiles every rule so matches() does no per-call setup
+    public void compile(){
+        CompiledRule[] compiled = new CompiledRule[rules.size()];
+        int i = 0;
+        for(Rule rule : rules){
+            compiled[i++] = new CompiledRule(rule);
+        }
+        compiledRules = ranked(compiled);
+    }
+
     public boolean matches(Path file){
-        return rules.stream().allMatch(rule -> rule.matches(file));
+        return matches(FileContext.of(file));
+    }
+
+    public boolean matches(FileContext file){
+        CompiledRule[] ordered = compiledRules;
+        if(ordered == null){
+            compile();
+            ordered = compiledRules;
+        }
+        boolean matched = true;
+        for(CompiledRule rule : ordered){
+            if(!rule.matches(file)){
+                matched = false;
+                break;
+            }
+        }
+        if(evaluations.incrementAndGet() % REORDER_INTERVAL == 0){
+            reorder(ordered);
+        }
+        return matched;
+    }
+
+    // re-ranks rules from measured latency and rejection rate; racing evaluations just see the old order
+    private void reorder(CompiledRule[] current){
+        CompiledRule[] ranked = ranked(current);
+        if(compiledRules == current){
+            compiledRules = ranked;
+        }
+    }
+
+    // ranks are read once up front, since other threads keep updating the stats while we sort
+    private static CompiledRule[] ranked(CompiledRule[] rules){
+        double[] ranks = new double[rules.length];
+        Integer[] order = new Integer[rules.length];
+        for(int i = 0; i < rules.length; i++){
+            ranks[i] = rules[i].stats.rank();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> ranks[i]));
+        CompiledRule[] sorted = new CompiledRule[rules.length];
+        for(int i = 0; i < rules.length; i++){
+            sorted[i] = rules[order[i]];
+        }
+        return sorted;
+    }
+
+    // live statistics for each compiled rule, in current evaluation order
+    public Map<Rule, RuleStats> getRuleStats(){
+        Map<Rule, RuleStats> stats = new LinkedHashMap<>();
+        CompiledRule[] ordered = compiledRules;
+        if(ordered != null){
+            for(CompiledRule rule : ordered){
+                stats.put(rule.rule, rule.stats);
+            }
+        }
+        return stats;
     }
 
     public Set<Rule> getRules(){
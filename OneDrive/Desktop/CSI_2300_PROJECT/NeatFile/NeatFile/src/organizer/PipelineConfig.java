@@ -0,0 +1,55 @@
+package organizer;
+
+// thread counts for each stage of the file pipeline
+public class PipelineConfig {
+    private final int detectThreads;
+    private final int statThreads;
+    private final int matchThreads;
+    private final int moveThreads;
+    private final int contentThreads;
+
+    public PipelineConfig(int detectThreads, int statThreads, int matchThreads, int moveThreads, int contentThreads){
+        this.detectThreads = Math.max(1, detectThreads);
+        this.statThreads = Math.max(1, statThreads);
+        this.matchThreads = Math.max(1, matchThreads);
+        this.moveThreads = Math.max(1, moveThreads);
+        this.contentThreads = Math.max(1, contentThreads);
+    }
+
+    // reads -Dneatfile.pipeline.<stage>Threads, falling back to sensible defaults
+    public static PipelineConfig fromSystemProperties(){
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new PipelineConfig(
+            Integer.getInteger("neatfile.pipeline.detectThreads", 1),
+            Integer.getInteger("neatfile.pipeline.statThreads", 2),
+            Integer.getInteger("neatfile.pipeline.matchThreads", cores),
+            Integer.getInteger("neatfile.pipeline.moveThreads", 2),
+            Integer.getInteger("neatfile.pipeline.contentThreads", 2));
+    }
+
+    public int getDetectThreads(){
+        return detectThreads;
+    }
+
+    public int getStatThreads(){
+        return statThreads;
+    }
+
+    public int getMatchThreads(){
+        return matchThreads;
+    }
+
+    public int getMoveThreads(){
+        return moveThreads;
+    }
+
+    // files whose groups look inside them; they wait on document extraction (see ExtractionPool)
+    public int getContentThreads(){
+        return contentThreads;
+    }
+
+    @Override
+    public String toString(){
+        return "detect=" + detectThreads + ", stat=" + statThreads + ", match=" + matchThreads + ", move=" + moveThreads + ", content=" + contentThreads;
+    }
+}
@@ -0,0 +1,140 @@
+package organizer;
+
+import java.nio.file.Path;
+
+// What the scanner saw last time: path -> (size, mtime) in flat primitive arrays.
+// Paths are stored as 64-bit hashes in an open-addressed table, about 28 bytes per file,
+// so a few million entries fit in well under 100 MB.
+public class ScanSnapshot {
+    private static final long EMPTY = 0L;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private long[] keys;
+    private long[] sizes;
+    private long[] modified;
+    private int[] seenInPass;
+    private int count;
+    private int pass;
+
+    public ScanSnapshot(){
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        sizes = new long[capacity];
+        modified = new long[capacity];
+        seenInPass = new int[capacity];
+    }
+
+    public synchronized void beginPass(){
+        pass++;
+    }
+
+    // records the file for this pass; true if it is new or its size or mtime changed since the last pass
+    public synchronized boolean observe(Path file, long size, long modifiedMillis){
+        long key = hash(file);
+        int slot = find(key);
+        if(keys[slot] == key){
+            seenInPass[slot] = pass;
+            if(sizes[slot] == size && modified[slot] == modifiedMillis){
+                return false;
+            }
+            sizes[slot] = size;
+            modified[slot] = modifiedMillis;
+            return true;
+        }
+        keys[slot] = key;
+        sizes[slot] = size;
+        modified[slot] = modifiedMillis;
+        seenInPass[slot] = pass;
+        if(++count * 4 > keys.length * 3){   // keep the load factor under 0.75
+            rehash(keys.length * 2, Integer.MIN_VALUE);
+        }
+        return true;
+    }
+
+    // makes the next pass treat the file as new, e.g. after its move failed
+    public synchronized void forget(Path file){
+        long key = hash(file);
+        int slot = find(key);
+        if(keys[slot] == key){
+            sizes[slot] = -1;
+            modified[slot] = Long.MIN_VALUE;
+        }
+    }
+
+    // drops every file not seen during the current pass (deleted or moved away); returns how many
+    public synchronized int endPass(){
+        int before = count;
+        rehash(keys.length, pass);
+        return before - count;
+    }
+
+    public synchronized void clear(){
+        allocate(INITIAL_CAPACITY);
+        count = 0;
+    }
+
+    public synchronized int size(){
+        return count;
+    }
+
+    // linear probing; returns the slot holding the key or the empty slot where it belongs
+    private int find(long key){
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while(keys[slot] != EMPTY && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // rebuilds the table, keeping only entries seen in minimumPass or later
+    private void rehash(int capacity, int minimumPass){
+        long[] oldKeys = keys;
+        long[] oldSizes = sizes;
+        long[] oldModified = modified;
+        int[] oldSeen = seenInPass;
+        int live = 0;
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldKeys[i] != EMPTY && oldSeen[i] >= minimumPass){
+                live++;
+            }
+        }
+        while(capacity > INITIAL_CAPACITY && live * 4 < capacity){   // shrink after a large directory empties out
+            capacity >>>= 1;
+        }
+        allocate(capacity);
+        count = 0;
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldKeys[i] != EMPTY && oldSeen[i] >= minimumPass){
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                sizes[slot] = oldSizes[i];
+                modified[slot] = oldModified[i];
+                seenInPass[slot] = oldSeen[i];
+                count++;
+            }
+        }
+    }
+
+    // 64-bit FNV-1a over the path string, finished with a murmur mix; 0 is reserved for empty slots
+    private static long hash(Path file){
+        String value = file.toString();
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++){
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "ScanSnapshot[files=" + count + ", capacity=" + keys.length + ", pass=" + pass + "]";
+    }
+}
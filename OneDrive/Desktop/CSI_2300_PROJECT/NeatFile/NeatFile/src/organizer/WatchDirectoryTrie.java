@@ -0,0 +1,90 @@
+package organizer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Path-segment trie over every group's watch directories. Walking a file's parent path once
+// yields every group whose watch scope covers it, instead of testing each group's directories.
+public class WatchDirectoryTrie {
+    private final Node root = new Node();
+
+    private static class Node {
+        private final Map<Path, Node> children = new HashMap<>();
+        private final List<NeatGroup> groups = new ArrayList<>();   // groups watching exactly this directory
+    }
+
+    public WatchDirectoryTrie(Collection<NeatGroup> groups){
+        for(NeatGroup group : groups){
+            for(Path watchDir : group.getWatchDirectories()){
+                Node node = root;
+                for(Path segment : segments(watchDir)){
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+                // groups arrive one at a time, so a repeat can only be this group's own previous entry
+                if(node.groups.isEmpty() || node.groups.get(node.groups.size() - 1) != group){
+                    node.groups.add(group);
+                }
+            }
+        }
+    }
+
+    // groups with a watch directory that is the file's parent or one of its ancestors
+    public Set<NeatGroup> groupsWatching(Path file){
+        Path parent = file.getParent();
+        if(parent == null){
+            return Collections.emptySet();
+        }
+        Set<NeatGroup> found = null;
+        Node node = root;
+        for(Path segment : segments(parent)){
+            node = node.children.get(segment);
+            if(node == null){
+                break;
+            }
+            if(!node.groups.isEmpty()){
+                if(found == null){
+                    found = Collections.newSetFromMap(new IdentityHashMap<>());
+                }
+                found.addAll(node.groups);
+            }
+        }
+        return found == null ? Collections.emptySet() : found;
+    }
+
+    public boolean isWatched(Path file){
+        Path parent = file.getParent();
+        if(parent == null){
+            return false;
+        }
+        Node node = root;
+        for(Path segment : segments(parent)){
+            node = node.children.get(segment);
+            if(node == null){
+                return false;
+            }
+            if(!node.groups.isEmpty()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // root component (if any) followed by each name element
+    private static List<Path> segments(Path path){
+        List<Path> segments = new ArrayList<>(path.getNameCount() + 1);
+        if(path.getRoot() != null){
+            segments.add(path.getRoot());
+        }
+        for(Path name : path){
+            segments.add(name);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,157 @@
+package organizer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Keeps every directory under the watch roots registered with one WatchService.
+// Trees are walked in parallel on a ForkJoinPool, so registering a large tree never runs on the caller's thread.
+public class WatchRegistry {
+    private static final Logger LOG = LogManager.getLogger(WatchRegistry.class);
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+    private final ForkJoinPool walkPool;
+
+    public WatchRegistry(WatchService watchService){
+        this.watchService = watchService;
+        int threads = Integer.getInteger("neatfile.watch.walkThreads", Math.min(8, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger count = new AtomicInteger();
+        this.walkPool = new ForkJoinPool(Math.max(1, threads), pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("neatfile-watch-walk-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    // registers root and everything below it in the background; files found on the way go to fileSink (may be null)
+    public CompletableFuture<Integer> registerTreeAsync(Path root, Consumer<Path> fileSink){
+        return CompletableFuture.supplyAsync(() -> registerTree(root, fileSink), walkPool);
+    }
+
+    // blocking variant; returns the number of directories newly registered
+    public int registerTree(Path root, Consumer<Path> fileSink){
+        if (!Files.isDirectory(root)) {
+            LOG.warn("Skipping watch directory: {}", root);
+            return 0;
+        }
+        AtomicInteger registered = new AtomicInteger();
+        walkPool.invoke(new RegisterTask(root, fileSink, registered));
+        return registered.get();
+    }
+
+    private class RegisterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final Consumer<Path> fileSink;
+        private final AtomicInteger registered;
+
+        private RegisterTask(Path directory, Consumer<Path> fileSink, AtomicInteger registered){
+            this.directory = directory;
+            this.fileSink = fileSink;
+            this.registered = registered;
+        }
+
+        @Override
+        protected void compute(){
+            if (register(directory)) {
+                registered.incrementAndGet();
+            }
+            List<RegisterTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {   // don't follow links into loops
+                        children.add(new RegisterTask(child, fileSink, registered));
+                    } else if (fileSink != null) {
+                        fileSink.accept(child);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to walk watch directory: {} - {}", directory, e.getMessage());
+            }
+            invokeAll(children);
+        }
+    }
+
+    private boolean register(Path directory){
+        if (keys.containsKey(directory)) {
+            return false;
+        }
+        try {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            directories.put(key, directory);
+            keys.put(directory, key);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to register watch directory: {} - {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    // cancels the keys for root and every registered directory below it
+    public int unregisterTree(Path root){
+        return unregisterTree(root, List.of());
+    }
+
+    // same, but leaves folders under any of the keep roots registered
+    public int unregisterTree(Path root, Collection<Path> keep){
+        int cancelled = 0;
+        for (Path directory : new ArrayList<>(keys.keySet())) {
+            if (directory.startsWith(root) && keep.stream().noneMatch(directory::startsWith)) {
+                WatchKey key = keys.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                    directories.remove(key);
+                    cancelled++;
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    // the directory a key belongs to, or null for a key we've already dropped
+    public Path directoryFor(WatchKey key){
+        return directories.get(key);
+    }
+
+    // called when reset() says the key is no longer valid (directory deleted or unmounted)
+    public void invalidated(WatchKey key){
+        Path directory = directories.remove(key);
+        if (directory != null) {
+            keys.remove(directory, key);
+        }
+    }
+
+    public boolean isRegistered(Path directory){
+        return keys.containsKey(directory);
+    }
+
+    public int size(){
+        return keys.size();
+    }
+
+    public void shutdown(){
+        walkPool.shutdownNow();
+    }
+}
@@ -0,0 +1,281 @@
+package organizer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Process-wide counters, latency histograms and gauges for the organizer engine, exported over JMX.
+// Counters are LongAdders and histograms are lock-free, so recording costs a few nanoseconds on the hot path.
+public class EngineMetrics implements EngineMetricsMXBean {
+    private static final Logger LOG = LogManager.getLogger(EngineMetrics.class);
+
+    public static final String OBJECT_NAME = "organizer:type=EngineMetrics";
+    public static final String QUEUE_DEPTH = "queueDepth";
+    public static final String WATCHED_DIRECTORIES = "watchedDirectories";
+    public static final String QUARANTINED_FILES = "quarantinedFiles";
+    public static final String ABANDONED_EXTRACTIONS = "abandonedExtractions";
+    public static final String WATCH_QUEUE = "watchQueue";
+
+    private static volatile EngineMetrics shared;
+
+    private final LongAdder eventsReceived = new LongAdder();
+    private final LongAdder watchOverflows = new LongAdder();
+    private final LongAdder watchEventsDropped = new LongAdder();
+    private final LongAdder directoryRescans = new LongAdder();
+    private final LongAdder filesSubmitted = new LongAdder();
+    private final LongAdder filesMatched = new LongAdder();
+    private final LongAdder filesUnmatched = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder decisionsReused = new LongAdder();
+    private final LongAdder movesCompleted = new LongAdder();
+    private final LongAdder moveFailures = new LongAdder();
+    private final LongAdder extractionFailures = new LongAdder();
+    private final LongAdder extractionTimeouts = new LongAdder();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram extractionLatency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> ruleLatency = new ConcurrentHashMap<>();
+    private final Map<String, List<LongSupplier>> gauges = new ConcurrentHashMap<>();
+
+    // -Dneatfile.jmx=false keeps the MBean out of the platform MBean server
+    public static EngineMetrics shared(){
+        EngineMetrics metrics = shared;
+        if (metrics == null) {
+            synchronized (EngineMetrics.class) {
+                metrics = shared;
+                if (metrics == null) {
+                    metrics = new EngineMetrics();
+                    if (!"false".equals(System.getProperty("neatfile.jmx"))) {
+                        metrics.register();
+                    }
+                    shared = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private void register(){
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            LOG.warn("Failed to register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    public void eventReceived(){
+        eventsReceived.increment();
+    }
+
+    // the kernel (or the WatchService) lost events for a directory
+    public void watchOverflow(){
+        watchOverflows.increment();
+    }
+
+    // the watcher's queue was full; the directory gets rescanned instead
+    public void watchEventDropped(){
+        watchEventsDropped.increment();
+    }
+
+    public void directoryRescanned(){
+        directoryRescans.increment();
+    }
+
+    public void fileSubmitted(){
+        filesSubmitted.increment();
+    }
+
+    public void fileMatched(){
+        filesMatched.increment();
+    }
+
+    public void fileUnmatched(){
+        filesUnmatched.increment();
+    }
+
+    public void conflict(){
+        conflicts.increment();
+    }
+
+    public void decisionReused(){
+        decisionsReused.increment();
+    }
+
+    public void moveCompleted(long nanos){
+        movesCompleted.increment();
+        moveLatency.record(nanos);
+    }
+
+    public void moveFailed(){
+        moveFailures.increment();
+    }
+
+    public void extractionCompleted(long nanos){
+        extractionLatency.record(nanos);
+    }
+
+    public void extractionFailed(){
+        extractionFailures.increment();
+    }
+
+    public void extractionTimedOut(){
+        extractionTimeouts.increment();
+    }
+
+    // histogram for one rule type; callers keep the reference instead of looking it up per evaluation
+    public LatencyHistogram ruleLatency(String ruleType){
+        return ruleLatency.computeIfAbsent(ruleType, type -> new LatencyHistogram());
+    }
+
+    // gauges with the same name are summed, so every engine instance can contribute its own queue
+    public void addGauge(String name, LongSupplier gauge){
+        gauges.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>()).add(gauge);
+    }
+
+    public void removeGauge(String name, LongSupplier gauge){
+        List<LongSupplier> suppliers = gauges.get(name);
+        if (suppliers != null) {
+            suppliers.remove(gauge);
+        }
+    }
+
+    public long gauge(String name){
+        List<LongSupplier> suppliers = gauges.get(name);
+        long total = 0;
+        if (suppliers != null) {
+            for (LongSupplier supplier : suppliers) {
+                total += supplier.getAsLong();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long getEventsReceived(){
+        return eventsReceived.sum();
+    }
+
+    @Override
+    public long getWatchOverflows(){
+        return watchOverflows.sum();
+    }
+
+    @Override
+    public long getWatchEventsDropped(){
+        return watchEventsDropped.sum();
+    }
+
+    @Override
+    public long getDirectoryRescans(){
+        return directoryRescans.sum();
+    }
+
+    @Override
+    public long getFilesSubmitted(){
+        return filesSubmitted.sum();
+    }
+
+    @Override
+    public long getFilesMatched(){
+        return filesMatched.sum();
+    }
+
+    @Override
+    public long getFilesUnmatched(){
+        return filesUnmatched.sum();
+    }
+
+    @Override
+    public long getConflicts(){
+        return conflicts.sum();
+    }
+
+    @Override
+    public long getDecisionsReused(){
+        return decisionsReused.sum();
+    }
+
+    @Override
+    public long getMovesCompleted(){
+        return movesCompleted.sum();
+    }
+
+    @Override
+    public long getMoveFailures(){
+        return moveFailures.sum();
+    }
+
+    @Override
+    public long getExtractionFailures(){
+        return extractionFailures.sum();
+    }
+
+    @Override
+    public long getExtractionTimeouts(){
+        return extractionTimeouts.sum();
+    }
+
+    @Override
+    public long getQueueDepth(){
+        return gauge(QUEUE_DEPTH);
+    }
+
+    @Override
+    public long getWatchedDirectories(){
+        return gauge(WATCHED_DIRECTORIES);
+    }
+
+    @Override
+    public Map<String, Long> getGauges(){
+        Map<String, Long> values = new TreeMap<>();
+        for (String name : gauges.keySet()) {
+            values.put(name, gauge(name));
+        }
+        return values;
+    }
+
+    @Override
+    public LatencySnapshot getMoveLatency(){
+        return moveLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getExtractionLatency(){
+        return extractionLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getRuleEvaluationLatency(){
+        Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+        ruleLatency.forEach((type, histogram) -> snapshots.put(type, histogram.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public void resetLatencies(){
+        moveLatency.reset();
+        extractionLatency.reset();
+        ruleLatency.values().forEach(LatencyHistogram::reset);
+    }
+
+    @Override
+    public String toString(){
+        return "EngineMetrics[events=" + getEventsReceived() + ", submitted=" + getFilesSubmitted()
+            + ", matched=" + getFilesMatched() + ", unmatched=" + getFilesUnmatched() + ", conflicts=" + getConflicts() + ", reused=" + getDecisionsReused()
+            + ", moves=" + getMovesCompleted() + ", moveFailures=" + getMoveFailures()
+            + ", queueDepth=" + getQueueDepth() + ", watchedDirectories=" + getWatchedDirectories() + "]";
+    }
+}
@@ -0,0 +1,52 @@
+package organizer.metrics;
+
+import java.util.Map;
+
+// JMX view of EngineMetrics, registered as organizer:type=EngineMetrics
+public interface EngineMetricsMXBean {
+    long getEventsReceived();
+
+    long getWatchOverflows();
+
+    // events that found the watcher's queue full (backpressure); their directories were rescanned instead
+    long getWatchEventsDropped();
+
+    // single-directory rescans after overflows, dropped events or failed moves
+    long getDirectoryRescans();
+
+    long getFilesSubmitted();
+
+    long getFilesMatched();
+
+    long getFilesUnmatched();
+
+    long getConflicts();
+
+    // files skipped because their earlier no-match/conflict/in-place decision still applied
+    long getDecisionsReused();
+
+    long getMovesCompleted();
+
+    long getMoveFailures();
+
+    long getExtractionFailures();
+
+    // extractions abandoned at their deadline; a file that keeps timing out is quarantined
+    long getExtractionTimeouts();
+
+    // files inside the engine right now: pipeline stages, move batches and write-stability waits
+    long getQueueDepth();
+
+    long getWatchedDirectories();
+
+    Map<String, Long> getGauges();
+
+    LatencySnapshot getMoveLatency();
+
+    LatencySnapshot getExtractionLatency();
+
+    // keyed by rule type, e.g. "NameHasRule"; sampled, like the adaptive rule ordering
+    Map<String, LatencySnapshot> getRuleEvaluationLatency();
+
+    void resetLatencies();
+}
@@ -0,0 +1,115 @@
+package organizer.rule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Aho-Corasick automaton: one pass over the text finds every needle, however many there are. States are trie nodes
+// with sorted child labels (binary searched) and failure links followed on a mismatch, so the only state carried
+// between chunks is one int. Chars that occur in no needle go straight back to the root.
+final class AhoCorasick {
+    private final BitSet alphabet = new BitSet();
+    private final char[][] labels;   // per state, sorted
+    private final int[][] targets;
+    private final int[] failure;
+    private final int[][] outputs;   // ids of every needle ending at the state, including through the failure chain
+
+    // needles.get(i) is reported as ids[i]; needles must not be empty
+    AhoCorasick(List<String> needles, int[] ids){
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        for(int i = 0; i < needles.size(); i++){
+            String needle = needles.get(i);
+            int state = 0;
+            for(int j = 0; j < needle.length(); j++){
+                char c = needle.charAt(j);
+                alphabet.set(c);
+                Integer next = trie.get(state).get(c);
+                if(next == null){
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(ids[i]);
+        }
+
+        int states = trie.size();
+        labels = new char[states][];
+        targets = new int[states][];
+        for(int state = 0; state < states; state++){
+            TreeMap<Character, Integer> children = trie.get(state);
+            labels[state] = new char[children.size()];
+            targets[state] = new int[children.size()];
+            int k = 0;
+            for(Map.Entry<Character, Integer> child : children.entrySet()){
+                labels[state][k] = child.getKey();
+                targets[state][k++] = child.getValue();
+            }
+        }
+
+        // breadth first, so a state's failure target (always shallower) is finished before the state itself
+        failure = new int[states];
+        outputs = new int[states][];
+        outputs[0] = new int[0];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while(!queue.isEmpty()){
+            int state = queue.poll();
+            for(int k = 0; k < labels[state].length; k++){
+                char c = labels[state][k];
+                int child = targets[state][k];
+                int fallback = 0;
+                if(state != 0){
+                    int f = failure[state];
+                    while(f != 0 && child(f, c) < 0){
+                        f = failure[f];
+                    }
+                    int target = child(f, c);
+                    fallback = target >= 0 ? target : 0;
+                }
+                failure[child] = fallback;
+                int[] own = ends.get(child).stream().mapToInt(Integer::intValue).toArray();
+                int[] inherited = outputs[fallback];
+                int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+                outputs[child] = merged;
+                queue.add(child);
+            }
+        }
+    }
+
+    int next(int state, char c){
+        if(!alphabet.get(c)){
+            return 0;
+        }
+        while(true){
+            int target = child(state, c);
+            if(target >= 0){
+                return target;
+            }
+            if(state == 0){
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    // needle ids that end at this state; empty for most states
+    int[] outputs(int state){
+        return outputs[state];
+    }
+
+    private int child(int state, char c){
+        int index = Arrays.binarySearch(labels[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+}
@@ -0,0 +1,617 @@
+package organizer.rule;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Inverted trigram index over the text of documents in the watch directories, so a content rule can rule a
+// document out without parsing it again. Each indexed version of a file (identity, size and mtime, as in
+// ExtractionCache.Key) is one document; a literal needle whose trigrams aren't all in a document can't be in its
+// text, anything else is verified against the real text (extraction cache first). New documents sit in memory until
+// enough trigrams pile up, then go to an immutable segment file (see IndexSegment); once there are more than
+// MAX_SEGMENTS they are merged in the background, dropping documents that were deleted, replaced or moved away.
+// Deletes and renames only touch the in-memory maps; a restart sees the old entries until that next merge, which is
+// harmless since lookups go by identity and version, never by path. Merged-away segments are listed in SUPERSEDED
+// before they are deleted, since a file that is still mapped can't be deleted on Windows; whatever is left is
+// deleted on the next start, before anything maps it again.
+public class ContentIndex {
+    private static final Logger LOG = LogManager.getLogger(ContentIndex.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.tri");
+    private static final int MAX_SEGMENTS = 8;
+    private static final long MAX_MERGE_BYTES = 1L << 30;   // segments are mapped with int offsets, stay well below 2 GB
+    private static final String SUPERSEDED = "superseded.lst";
+
+    private static volatile ContentIndex shared;
+
+    public enum Answer {
+        ABSENT,     // the document can't contain the needle
+        POSSIBLE,   // it has every trigram of the needle; search the text to be sure
+        UNKNOWN     // not indexed (yet), or the needle is too short or a regex
+    }
+
+    private static class Doc {
+        private final int id;
+        private final String identity;
+        private final long size;
+        private final long modifiedMillis;
+        private Path path;
+        private long[] trigrams;        // sorted, until the document is flushed
+        private IndexSegment segment;   // after
+
+        private Doc(int id, String identity, long size, long modifiedMillis, Path path){
+            this.id = id;
+            this.identity = identity;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.path = path;
+        }
+
+        private boolean isVersion(ExtractionCache.Key key){
+            return size == key.getSize() && modifiedMillis == key.getModifiedMillis();
+        }
+
+        private boolean contains(long trigram){
+            return trigrams != null ? Arrays.binarySearch(trigrams, trigram) >= 0 : segment.contains(id, trigram);
+        }
+
+        private IndexSegment.Doc entry(){
+            return new IndexSegment.Doc(id, size, modifiedMillis, identity, path.toString());
+        }
+    }
+
+    private final Path directory;   // null when the index is off
+    private final long flushTrigrams;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Doc> byIdentity = new HashMap<>();
+    private final Map<Path, Doc> byPath = new HashMap<>();
+    private final List<IndexSegment> segments = new ArrayList<>();
+    private List<Doc> live = new ArrayList<>();
+    private long liveTrigrams;
+    private int nextDocId;
+    private long nextGeneration;
+    private final Set<String> superseded = new TreeSet<>();   // segment file names to delete; load and merge only
+
+    private final ExecutorService maintenance;   // flushes and merges, one at a time
+    private final ExecutorService indexer;       // documents that arrived and stayed; dropped when it falls behind
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final LongAdder ruledOut = new LongAdder();
+    private final LongAdder possible = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+
+    // -Dneatfile.index.dir (unset = no index), -Dneatfile.index.flushTrigrams (default 1M, about 8 MB of
+    // trigrams held in memory before they are written out as a segment)
+    public static ContentIndex shared(){
+        ContentIndex index = shared;
+        if(index == null){
+            synchronized(ContentIndex.class){
+                index = shared;
+                if(index == null){
+                    String dir = System.getProperty("neatfile.index.dir");
+                    index = new ContentIndex(dir == null || dir.isBlank() ? null : Paths.get(dir),
+                        Long.getLong("neatfile.index.flushTrigrams", 1L << 20));
+                    shared = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public ContentIndex(Path directory, long flushTrigrams){
+        this.flushTrigrams = Math.max(1, flushTrigrams);
+        this.maintenance = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            daemonThread("neatfile-index-maintenance"));
+        this.indexer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024),
+            daemonThread("neatfile-index-builder"), new ThreadPoolExecutor.DiscardPolicy());
+        Path usable = directory;
+        if(directory != null){
+            try {
+                Files.createDirectories(directory);
+                load(directory);
+            } catch (IOException e) {
+                LOG.warn("Content index directory unavailable, index off: {}", e.getMessage());
+                usable = null;
+            }
+        }
+        this.directory = usable;
+    }
+
+    public boolean isEnabled(){
+        return directory != null;
+    }
+
+    private void load(Path dir) throws IOException {
+        Path list = dir.resolve(SUPERSEDED);
+        if(Files.exists(list)){   // merged away last time but still mapped then
+            for(String name : Files.readAllLines(list)){
+                try {
+                    Files.deleteIfExists(dir.resolve(name));
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete merged index segment {}: {}", name, e.getMessage());
+                    superseded.add(name);   // never loaded, tried again next start
+                }
+            }
+            writeSuperseded(dir);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path file : stream){
+                String name = file.getFileName().toString();
+                if(name.endsWith(".tmp")){   // an interrupted flush or merge
+                    Files.deleteIfExists(file);
+                } else if(SEGMENT_NAME.matcher(name).matches()){
+                    nextGeneration = Math.max(nextGeneration, generationOf(file) + 1);   // never reuse a listed name
+                    if(!superseded.contains(name)){
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(ContentIndex::generationOf));
+        for(Path file : files){
+            long generation = generationOf(file);
+            IndexSegment segment;
+            try {
+                segment = IndexSegment.open(file, generation);
+            } catch (IOException e) {
+                LOG.warn("Dropping unreadable index segment {}: {}", file, e.getMessage());
+                Files.deleteIfExists(file);
+                continue;
+            }
+            segments.add(segment);
+            for(IndexSegment.Doc entry : segment.docs()){
+                Doc doc = new Doc(entry.id(), entry.identity(), entry.size(), entry.modifiedMillis(), Paths.get(entry.path()));
+                doc.segment = segment;
+                nextDocId = Math.max(nextDocId, doc.id + 1);
+                Doc existing = byIdentity.get(doc.identity);
+                if(existing == null || existing.id < doc.id){   // a later id is a later version of the file
+                    byIdentity.put(doc.identity, doc);
+                }
+                existing = byPath.get(doc.path);
+                if(existing == null || existing.id < doc.id){
+                    byPath.put(doc.path, doc);
+                }
+            }
+        }
+        LOG.info("Content index: {} documents in {} segments", byIdentity.size(), segments.size());
+        scheduleMergeIfNeeded();
+    }
+
+    private void recordSuperseded(){
+        try {
+            writeSuperseded(directory);
+        } catch (IOException e) {
+            LOG.warn("Failed to record merged index segments: {}", e.getMessage());
+        }
+    }
+
+    // replaced atomically, so a crash leaves either the old list or the new one
+    private void writeSuperseded(Path dir) throws IOException {
+        Path list = dir.resolve(SUPERSEDED);
+        if(superseded.isEmpty()){
+            Files.deleteIfExists(list);
+            return;
+        }
+        Path temp = dir.resolve(SUPERSEDED + ".tmp");
+        Files.write(temp, superseded);
+        Files.move(temp, list, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long generationOf(Path file){
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private Path segmentFile(long generation){
+        return directory.resolve(String.format("segment-%08d.tri", generation));
+    }
+
+    // needle is Trigrams.ofNeedle(...) of a literal search, or null
+    Answer check(ExtractionCache.Key key, long[] needle){
+        if(directory == null || needle == null){
+            unknown.increment();
+            return Answer.UNKNOWN;
+        }
+        lock.readLock().lock();
+        try {
+            Doc doc = byIdentity.get(key.getIdentity());
+            if(doc == null || !doc.isVersion(key)){
+                unknown.increment();
+                return Answer.UNKNOWN;
+            }
+            for(long trigram : needle){
+                if(!doc.contains(trigram)){
+                    ruledOut.increment();
+                    return Answer.ABSENT;
+                }
+            }
+            possible.increment();
+            return Answer.POSSIBLE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isIndexed(ExtractionCache.Key key){
+        if(directory == null){
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            Doc doc = byIdentity.get(key.getIdentity());
+            return doc != null && doc.isVersion(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // records the full text's trigrams for this version of the file, replacing older versions and whatever was at the path
+    void add(ExtractionCache.Key key, Path path, long[] sortedTrigrams){
+        if(directory == null){
+            return;
+        }
+        boolean flush;
+        lock.writeLock().lock();
+        try {
+            Doc existing = byIdentity.get(key.getIdentity());
+            if(existing != null && existing.isVersion(key)){
+                return;
+            }
+            if(existing != null){
+                byPath.remove(existing.path, existing);
+            }
+            Doc previous = byPath.get(path);
+            if(previous != null){
+                byIdentity.remove(previous.identity, previous);
+            }
+            Doc doc = new Doc(nextDocId++, key.getIdentity(), key.getSize(), key.getModifiedMillis(), path);
+            doc.trigrams = sortedTrigrams;
+            byIdentity.put(doc.identity, doc);
+            byPath.put(path, doc);
+            live.add(doc);
+            liveTrigrams += sortedTrigrams.length;
+            flush = liveTrigrams >= flushTrigrams;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if(flush && flushScheduled.compareAndSet(false, true)){
+            submit(maintenance, () -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    // a file that arrived and is staying in a watch directory: index it in the background so later content rules can skip it
+    public void indexLater(Path file){
+        if(directory == null || !DocumentExtractor.supports(file.getFileName().toString().toLowerCase())){
+            return;
+        }
+        submit(indexer, () -> indexNow(file));
+    }
+
+    private void indexNow(Path file){
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if(attributes.size() > ContentNeedles.MAX_FILE_SIZE){
+                return;
+            }
+            ExtractionCache.Key key = ExtractionCache.Key.of(file, attributes);
+            if(isIndexed(key)){
+                return;
+            }
+            Trigrams trigrams = new Trigrams();
+            boolean stopped = ExtractionPool.shared().extract(key, file, piece -> {
+                trigrams.feed(piece);
+                return trigrams.overflowed();
+            });
+            if(!stopped){
+                add(key, file, trigrams.toSortedArray());
+            }
+        } catch (Exception e) {
+            LOG.debug("Not indexing {}: {}", file, e.getMessage());
+        }
+    }
+
+    // the file was deleted or left the watch directories
+    public void remove(Path file){
+        if(directory == null){
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Doc doc = byPath.remove(file);
+            if(doc != null){
+                byIdentity.remove(doc.identity, doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // renamed on the same filesystem: same identity, so the document stays valid under its new path
+    public void moved(Path source, Path target){
+        if(directory == null){
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Doc doc = byPath.remove(source);
+            if(doc != null){
+                doc.path = target;
+                Doc replaced = byPath.put(target, doc);
+                if(replaced != null && replaced != doc){
+                    byIdentity.remove(replaced.identity, replaced);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // writes the documents held in memory to a new segment; called on shutdown and whenever enough piled up
+    public synchronized void flush(){
+        if(directory == null){
+            return;
+        }
+        List<Doc> batch;
+        long generation;
+        lock.writeLock().lock();
+        try {
+            if(live.isEmpty()){
+                return;
+            }
+            batch = live;
+            live = new ArrayList<>();
+            liveTrigrams = 0;
+            generation = nextGeneration++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // queries keep using the in-memory trigrams while the segment is written
+        List<IndexSegment.Doc> entries = new ArrayList<>(batch.size());
+        List<IndexSegment.Cursor> cursors = new ArrayList<>(batch.size());
+        lock.readLock().lock();
+        try {
+            for(Doc doc : batch){
+                entries.add(doc.entry());
+                cursors.add(IndexSegment.cursor(doc.id, doc.trigrams));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            IndexSegment segment = IndexSegment.write(segmentFile(generation), generation, entries, cursors, id -> true);
+            lock.writeLock().lock();
+            try {
+                segments.add(segment);
+                for(Doc doc : batch){
+                    doc.segment = segment;
+                    doc.trigrams = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            LOG.debug("Content index: flushed {} documents to {}", batch.size(), segment.file());
+        } catch (IOException e) {
+            LOG.warn("Failed to write content index segment: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                batch.addAll(live);   // keep them in memory and try again with the next flush
+                live = batch;
+                live.forEach(doc -> liveTrigrams += doc.trigrams.length);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    private void scheduleMergeIfNeeded(){
+        if(segments.size() > MAX_SEGMENTS && mergeScheduled.compareAndSet(false, true)){
+            submit(maintenance, () -> {
+                mergeScheduled.set(false);
+                merge();
+            });
+        }
+    }
+
+    // folds the smallest segments into one, keeping only documents that are still current and still on disk
+    private synchronized void merge(){
+        List<IndexSegment> inputs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<IndexSegment> bySize = new ArrayList<>(segments);
+            bySize.sort(Comparator.comparingLong(IndexSegment::sizeBytes));
+            long total = 0;
+            for(IndexSegment segment : bySize){
+                if(total + segment.sizeBytes() > MAX_MERGE_BYTES){
+                    break;
+                }
+                total += segment.sizeBytes();
+                inputs.add(segment);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if(inputs.size() < 2){
+            return;
+        }
+        Set<IndexSegment> merging = new HashSet<>(inputs);
+        List<Doc> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for(Doc doc : byIdentity.values()){
+                if(merging.contains(doc.segment)){
+                    candidates.add(doc);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // stat outside the lock: a file that's gone or changed since it was indexed is dropped here
+        List<Doc> kept = new ArrayList<>();
+        List<Doc> stale = new ArrayList<>();
+        BitSet keep = new BitSet();
+        for(Doc doc : candidates){
+            if(stillOnDisk(doc)){
+                kept.add(doc);
+                keep.set(doc.id);
+            } else {
+                stale.add(doc);
+            }
+        }
+        kept.sort(Comparator.comparingInt(doc -> doc.id));
+
+        long generation;
+        List<IndexSegment.Doc> entries = new ArrayList<>(kept.size());
+        lock.writeLock().lock();
+        try {
+            generation = nextGeneration++;
+            kept.forEach(doc -> entries.add(doc.entry()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<IndexSegment.Cursor> cursors = new ArrayList<>(inputs.size());
+        inputs.forEach(segment -> cursors.add(segment.cursor()));
+        IndexSegment merged;
+        try {
+            merged = IndexSegment.write(segmentFile(generation), generation, entries, cursors, keep::get);
+        } catch (IOException e) {
+            LOG.warn("Failed to merge content index segments: {}", e.getMessage());
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            segments.removeAll(merging);
+            segments.add(merged);
+            for(Doc doc : kept){
+                if(merging.contains(doc.segment)){
+                    doc.segment = merged;
+                }
+            }
+            for(Doc doc : stale){
+                byIdentity.remove(doc.identity, doc);
+                byPath.remove(doc.path, doc);
+            }
+            // documents dropped while we merged may still point at an input; they are unreachable, but keep them valid
+            for(Doc doc : byIdentity.values()){
+                if(merging.contains(doc.segment)){
+                    doc.segment = merged;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // listed first: an input that is still mapped (Windows won't delete it) goes on the next start instead
+        inputs.forEach(segment -> superseded.add(segment.file().getFileName().toString()));
+        recordSuperseded();
+        for(IndexSegment segment : inputs){
+            try {
+                Files.deleteIfExists(segment.file());
+                superseded.remove(segment.file().getFileName().toString());
+            } catch (IOException e) {
+                LOG.debug("Merged index segment {} still in use, deleting it on the next start: {}",
+                    segment.file(), e.getMessage());
+            }
+        }
+        recordSuperseded();
+        LOG.info("Content index: merged {} segments into {} ({} documents, {} dropped)",
+            inputs.size(), merged.file().getFileName(), kept.size(), stale.size());
+        scheduleMergeIfNeeded();
+    }
+
+    private static boolean stillOnDisk(Doc doc){
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(doc.path, BasicFileAttributes.class);
+            ExtractionCache.Key key = ExtractionCache.Key.of(doc.path, attributes);
+            return key.getIdentity().equals(doc.identity) && doc.isVersion(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void submit(ExecutorService executor, Runnable task){
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // shutting down; the next start picks the work up again
+        }
+    }
+
+    private static ThreadFactory daemonThread(String name){
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public int getDocumentCount(){
+        lock.readLock().lock();
+        try {
+            return byIdentity.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount(){
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // documents a content rule didn't have to open because a needle trigram was missing
+    public long getRuledOut(){
+        return ruledOut.sum();
+    }
+
+    public long getPossible(){
+        return possible.sum();
+    }
+
+    public long getUnknown(){
+        return unknown.sum();
+    }
+
+    @Override
+    public String toString(){
+        return "ContentIndex[documents=" + getDocumentCount() + ", segments=" + getSegmentCount()
+            + ", ruledOut=" + getRuledOut() + ", possible=" + getPossible() + ", unknown=" + getUnknown() + "]";
+    }
+}
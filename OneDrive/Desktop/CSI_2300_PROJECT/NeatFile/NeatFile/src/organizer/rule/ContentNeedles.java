@@ -0,0 +1,308 @@
+package organizer.rule;
+
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+
+// The text-in-file searches of a set of rules, run together: a file's text is extracted once and searched in one
+// pass for all of them, and every StringContainedRule then reads its own result. Literal needles share two
+// Aho-Corasick automata (case-folded and exact), regex needles are fed the same chunks. NeatFileLogic builds one for
+// the active groups and hands it to each file's FileContext; a rule evaluated on its own gets a single-needle set.
+public final class ContentNeedles {
+    private static final Logger LOG = LogManager.getLogger(ContentNeedles.class);
+
+    static final int MAX_CACHED_CHARS = 8_000_000;   // longer extractions are searched but not cached
+    static final long MAX_FILE_SIZE = 100_000_000L; // change this to look for strings in documents bigger than 100MB (.txt is streamed and has no cap)
+
+    public static final ContentNeedles NONE = new ContentNeedles(List.of());
+
+    private final Map<StringContainedRule, Integer> ids = new LinkedHashMap<>();
+    private final int count;
+    private final AhoCorasick folded;   // null when there is no needle of that kind
+    private final AhoCorasick exact;
+    private final int[] regexIds;
+    private final TextSearch[] regexes;
+    private final BitSet emptyNeedles = new BitSet();
+    private final long[][] trigrams;   // per id, what the content index can rule out; null for regexes and short needles
+
+    // equal rules (same text, case and regex flag) share one needle
+    public static ContentNeedles of(Collection<? extends Rule> rules){
+        List<StringContainedRule> content = new ArrayList<>();
+        for(Rule rule : rules){
+            if(rule instanceof StringContainedRule search && !content.contains(search)){
+                content.add(search);
+            }
+        }
+        return content.isEmpty() ? NONE : new ContentNeedles(content);
+    }
+
+    private ContentNeedles(List<StringContainedRule> rules){
+        count = rules.size();
+        trigrams = new long[count][];
+        List<String> foldedNeedles = new ArrayList<>();
+        List<Integer> foldedIds = new ArrayList<>();
+        List<String> exactNeedles = new ArrayList<>();
+        List<Integer> exactIds = new ArrayList<>();
+        List<Integer> regexIdList = new ArrayList<>();
+        List<TextSearch> regexList = new ArrayList<>();
+        for(StringContainedRule rule : rules){
+            int id = ids.size();
+            ids.put(rule, id);
+            String input = rule.getInput();
+            if(rule.isRegex()){
+                regexIdList.add(id);
+                regexList.add(TextSearch.regex(Matching.compilePattern(input, rule.isCaseSensitive())));
+            } else if(input.isEmpty()){
+                emptyNeedles.set(id);
+            } else if(rule.isCaseSensitive()){
+                exactNeedles.add(input);
+                exactIds.add(id);
+                trigrams[id] = Trigrams.ofNeedle(input);
+            } else {
+                StringBuilder fold = new StringBuilder(input.length());
+                input.chars().forEach(c -> fold.append(Trigrams.fold((char) c)));
+                foldedNeedles.add(fold.toString());
+                foldedIds.add(id);
+                trigrams[id] = Trigrams.ofNeedle(input);
+            }
+        }
+        folded = foldedNeedles.isEmpty() ? null : new AhoCorasick(foldedNeedles, toArray(foldedIds));
+        exact = exactNeedles.isEmpty() ? null : new AhoCorasick(exactNeedles, toArray(exactIds));
+        regexIds = toArray(regexIdList);
+        regexes = regexList.toArray(new TextSearch[0]);
+    }
+
+    private static int[] toArray(List<Integer> values){
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // plain text or a document DocumentExtractor can read
+    public static boolean canSearch(String lowerName){
+        return lowerName.endsWith(".txt") || DocumentExtractor.supports(lowerName);
+    }
+
+    public boolean isEmpty(){
+        return count == 0;
+    }
+
+    public int size(){
+        return count;
+    }
+
+    // the rule's needle, or -1 when it isn't one of these
+    public int idOf(Rule rule){
+        return rule instanceof StringContainedRule search ? ids.getOrDefault(search, -1) : -1;
+    }
+
+    // needles of the given rules, e.g. everything one group searches for
+    public BitSet idsOf(Collection<? extends Rule> rules){
+        BitSet result = new BitSet(count);
+        for(Rule rule : rules){
+            int id = idOf(rule);
+            if(id >= 0){
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    // the first needle asked about runs the pass for all of them; the rest read the result from the file's context
+    boolean matches(FileContext file, int id){
+        if(file.getContentNeedles() != this){
+            return scan(file, null).get(id);
+        }
+        BitSet found = file.getContentFound();
+        if(found == null){
+            found = scan(file, file.getContentWanted());
+            file.setContentFound(found);
+        }
+        return found.get(id);
+    }
+
+    // every wanted needle (all when wanted is null) that occurs in the file's text
+    private BitSet scan(FileContext file, BitSet wanted){
+        Scanner scanner = new Scanner(wanted);
+        if(scanner.done()){
+            return scanner.found;
+        }
+        String name = file.getLowerName();
+        if(!canSearch(name)){
+            LOG.debug("Unsupported file type: {}", name);
+            return scanner.found;
+        }
+        if(name.endsWith(".txt")){   // plain text is streamed, so it needs neither the size cap nor the extraction cache
+            try {
+                PlainTextSearch.feed(file.getPath(), scanner);
+            } catch (IOException e) {
+                LOG.warn("Error processing file {}: {}", file, e.getMessage());
+            }
+            return scanner.found;
+        }
+        try {
+            BasicFileAttributes attributes = file.attributes();
+            if(attributes.size() > MAX_FILE_SIZE){
+                LOG.info("(Skipped) File too large: {}", file.getName());
+                return scanner.found;
+            }
+            ExtractionCache cache = ExtractionCache.shared();
+            ExtractionCache.Key key = ExtractionCache.Key.of(file.getPath(), attributes);
+            ExtractionPool extractor = ExtractionPool.shared();
+            if(extractor.isQuarantined(key)){
+                LOG.debug("Skipping quarantined document: {}", file);
+                return scanner.found;
+            }
+            ContentIndex index = ContentIndex.shared();
+            for(int id = 0; id < count; id++){
+                if(trigrams[id] != null && !scanner.decided.get(id)
+                        && index.check(key, trigrams[id]) == ContentIndex.Answer.ABSENT){
+                    scanner.exclude(id);
+                }
+            }
+            if(scanner.done()){   // the index ruled out everything still open: no parse
+                return scanner.found;
+            }
+            String cached = cache.get(key);
+            if(cached != null){
+                scanner.feed(cached);
+                return scanner.found;
+            }
+
+            // search while extracting; only a document read to the end is complete enough to cache (or index)
+            long start = System.nanoTime();
+            StringBuilder text = new StringBuilder();
+            boolean[] keepText = {true};
+            Trigrams indexed = index.isEnabled() && !index.isIndexed(key) ? new Trigrams() : null;
+            boolean stopped = extractor.extract(key, file.getPath(), piece -> {
+                if(keepText[0]){
+                    if(text.length() + piece.length() > MAX_CACHED_CHARS){
+                        keepText[0] = false;
+                        text.setLength(0);
+                        text.trimToSize();
+                    } else {
+                        text.append(piece);
+                    }
+                }
+                if(indexed == null){
+                    return scanner.feed(piece);
+                }
+                indexed.feed(piece);   // indexing needs the whole text, so keep reading once every needle is decided
+                return scanner.feed(piece) && indexed.overflowed();
+            });
+            EngineMetrics.shared().extractionCompleted(System.nanoTime() - start);
+            if(!stopped && keepText[0]){
+                cache.put(key, text.toString());
+            }
+            if(!stopped && indexed != null && !indexed.overflowed()){
+                index.add(key, file.getPath(), indexed.toSortedArray());
+            }
+        } catch (ExtractionPool.Busy e) {
+            LOG.debug("Extraction deferred: {}", e.getMessage());
+            file.validUntil(file.getEvaluationTime());   // every slot taken by other files; this one is retried later
+            return new BitSet();
+        } catch (TimeoutException e) {
+            LOG.warn("Gave up on {}: {}", name, e.getMessage());
+            file.validUntil(file.getEvaluationTime());   // undecided, so don't let the no-match stick; the next scan retries
+            return new BitSet();   // the worker may still be writing to the scanner
+        } catch (Exception e) {
+            EngineMetrics.shared().extractionFailed();
+            LOG.warn("Error extracting from {}: {}", name, e.getMessage());
+        }
+        return scanner.found;
+    }
+
+    // per-file state of one pass; done once every wanted needle is found or ruled out
+    private final class Scanner implements TextSearch.Scanner {
+        private final BitSet found = new BitSet();
+        private final BitSet decided = new BitSet();
+        private final TextSearch.Scanner[] regexScanners = new TextSearch.Scanner[regexes.length];
+        private int remaining = count;
+        private int foldedState;
+        private int exactState;
+
+        private Scanner(BitSet wanted){
+            if(wanted != null){
+                for(int id = 0; id < count; id++){
+                    if(!wanted.get(id)){
+                        exclude(id);
+                    }
+                }
+            }
+            for(int id = emptyNeedles.nextSetBit(0); id >= 0; id = emptyNeedles.nextSetBit(id + 1)){
+                mark(id);
+            }
+            for(int i = 0; i < regexes.length; i++){
+                regexScanners[i] = regexes[i].newScanner();
+            }
+        }
+
+        private void mark(int id){
+            if(!decided.get(id)){
+                decided.set(id);
+                found.set(id);
+                remaining--;
+            }
+        }
+
+        private void exclude(int id){
+            if(!decided.get(id)){
+                decided.set(id);
+                remaining--;
+            }
+        }
+
+        private boolean done(){
+            return remaining == 0;
+        }
+
+        @Override
+        public boolean feed(CharSequence chunk){
+            if(done()){
+                return true;
+            }
+            if(folded != null || exact != null){
+                int f = foldedState;
+                int e = exactState;
+                for(int i = 0, length = chunk.length(); i < length; i++){
+                    char c = chunk.charAt(i);
+                    if(folded != null){
+                        f = folded.next(f, Trigrams.fold(c));
+                        for(int id : folded.outputs(f)){
+                            mark(id);
+                        }
+                    }
+                    if(exact != null){
+                        e = exact.next(e, c);
+                        for(int id : exact.outputs(e)){
+                            mark(id);
+                        }
+                    }
+                    if(done()){
+                        return true;
+                    }
+                }
+                foldedState = f;
+                exactState = e;
+            }
+            for(int i = 0; i < regexScanners.length; i++){
+                if(!decided.get(regexIds[i]) && regexScanners[i].feed(chunk)){
+                    mark(regexIds[i]);
+                }
+            }
+            return done();
+        }
+
+        @Override
+        public boolean found(){
+            return !found.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package organizer.rule;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+// Pulls text out of office documents and PDFs a piece at a time (page, sheet cell, slide, chunk of a Word document)
+// and hands each piece to a sink, which can stop the extraction as soon as it has seen enough.
+public final class DocumentExtractor {
+    private static final long PDF_MAIN_MEMORY = 16L * 1024 * 1024;   // PDFBox spills to temp files beyond this
+    private static final int DOCX_CHUNK = 64 * 1024;
+
+    private DocumentExtractor(){}
+
+    @FunctionalInterface
+    public interface TextSink {
+        // returns true to stop extraction
+        boolean accept(CharSequence text);
+    }
+
+    // thrown through SAX callbacks to unwind a parse the sink no longer needs
+    private static class StopExtraction extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        private StopExtraction(){
+            super("extraction stopped by sink");
+        }
+    }
+
+    public static boolean supports(String lowerCaseName){
+        return lowerCaseName.endsWith(".docx") || lowerCaseName.endsWith(".pdf")
+            || lowerCaseName.endsWith(".xlsx") || lowerCaseName.endsWith(".pptx");
+    }
+
+    // returns true if the sink asked to stop, false if the whole document was read
+    public static boolean extract(Path file, TextSink sink) throws Exception {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".docx")) {
+            return extractDocx(file, sink);
+        }
+        if (name.endsWith(".pdf")) {
+            return extractPdf(file, sink);
+        }
+        if (name.endsWith(".xlsx")) {
+            return extractXlsx(file, sink);
+        }
+        if (name.endsWith(".pptx")) {
+            return extractPptx(file, sink);
+        }
+        throw new IllegalArgumentException("Unsupported file type: " + name);
+    }
+
+    // XWPFWordExtractor, as before, so headers, footers, footnotes, comments and content controls are all searched;
+    // its text is handed over in chunks so the sink can still stop early
+    private static boolean extractDocx(Path file, TextSink sink) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file.toFile());
+             XWPFDocument doc = new XWPFDocument(fis)) {
+            String text = new XWPFWordExtractor(doc).getText();
+            for (int start = 0; start < text.length(); start += DOCX_CHUNK) {
+                if (sink.accept(text.substring(start, Math.min(text.length(), start + DOCX_CHUNK)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean extractPdf(Path file, TextSink sink) throws IOException {
+        try (PDDocument doc = PDDocument.load(file.toFile(), MemoryUsageSetting.setupMixed(PDF_MAIN_MEMORY))) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            int pages = doc.getNumberOfPages();
+            for (int page = 1; page <= pages; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                if (sink.accept(stripper.getText(doc))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // SAX over each sheet's XML, so the workbook DOM is never built
+    private static boolean extractXlsx(Path file, TextSink sink) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            List<String> strings = readSharedStrings(reader);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = newXmlReader();
+                    parser.setContentHandler(new SheetHandler(strings, sink));
+                    parser.parse(new InputSource(sheet));
+                } catch (StopExtraction e) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static List<String> readSharedStrings(XSSFReader reader) throws Exception {
+        SharedStringsHandler handler = new SharedStringsHandler();
+        try (InputStream data = reader.getSharedStringsData()) {
+            if (data != null) {
+                XMLReader parser = newXmlReader();
+                parser.setContentHandler(handler);
+                parser.parse(new InputSource(data));
+            }
+        } catch (InvalidFormatException e) {
+            // workbook without a shared strings part
+        }
+        return handler.strings;
+    }
+
+    private static XMLReader newXmlReader() throws SAXException {
+        try {
+            return XMLHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private static boolean extractPptx(Path file, TextSink sink) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file.toFile());
+             XMLSlideShow ppt = new XMLSlideShow(fis)) {
+            for (XSLFSlide slide : ppt.getSlides()) {
+                for (XSLFShape shape : slide.getShapes()) {
+                    if (shape instanceof XSLFTextShape textShape
+                            && (sink.accept(textShape.getText()) || sink.accept(" "))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // collects the plain text of each <si>, skipping phonetic runs, without POI's rich text objects
+    private static class SharedStringsHandler extends DefaultHandler {
+        private final List<String> strings = new ArrayList<>();
+        private final StringBuilder item = new StringBuilder();
+        private boolean inText;
+        private boolean inPhonetic;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes){
+            switch (localName) {
+                case "si" -> item.setLength(0);
+                case "rPh" -> inPhonetic = true;
+                case "t" -> inText = !inPhonetic;
+                default -> {}
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length){
+            if (inText) {
+                item.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName){
+            switch (localName) {
+                case "si" -> strings.add(item.toString());
+                case "rPh" -> inPhonetic = false;
+                case "t" -> inText = false;
+                default -> {}
+            }
+        }
+    }
+
+    // emits string and plain numeric cells, like the old workbook walk did; formula results are skipped.
+    // Numbers are written the way the walk appended getNumericCellValue() ("42.0", dates as their serial number),
+    // so content rules keep matching the same text
+    private static class SheetHandler extends DefaultHandler {
+        private final List<String> strings;
+        private final TextSink sink;
+        private final StringBuilder value = new StringBuilder();
+        private String cellType;
+        private boolean hasFormula;
+        private boolean collecting;
+
+        private SheetHandler(List<String> strings, TextSink sink){
+            this.strings = strings;
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes){
+            switch (localName) {
+                case "c" -> {
+                    cellType = attributes.getValue("t");
+                    hasFormula = false;
+                }
+                case "f" -> hasFormula = true;
+                case "v", "t" -> {
+                    collecting = true;
+                    value.setLength(0);
+                }
+                default -> {}
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length){
+            if (collecting) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private static String numeric(String raw){
+            try {
+                return Double.toString(Double.parseDouble(raw));
+            } catch (NumberFormatException e) {
+                return raw;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!collecting || !(localName.equals("v") || localName.equals("t"))) {
+                return;
+            }
+            collecting = false;
+            String text = null;
+            if ("s".equals(cellType) && localName.equals("v")) {
+                text = strings.get(Integer.parseInt(value.toString().trim()));
+            } else if ("inlineStr".equals(cellType) && localName.equals("t")) {
+                text = value.toString();
+            } else if ((cellType == null || "n".equals(cellType)) && !hasFormula && localName.equals("v")) {
+                text = numeric(value.toString().trim());
+            }
+            if (text != null && (sink.accept(text) || sink.accept(" "))) {
+                throw new StopExtraction();
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package organizer.rule;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Two-tier cache of extracted document text, keyed by file identity + size + modification time.
+// Tier one is an in-heap LRU bounded by bytes; tier two is an optional gzip store on disk that survives restarts.
+public class ExtractionCache {
+    private static final Logger LOG = LogManager.getLogger(ExtractionCache.class);
+    private static final long ENTRY_OVERHEAD = 96;   // rough heap cost of the key, node and String header
+
+    private static volatile ExtractionCache shared;
+
+    private final long memoryBudget;
+    private final Path diskDirectory;   // null when the disk tier is off
+    private final long diskBudget;
+    private final LinkedHashMap<Key, String> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder memoryEvictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    public static class Key {
+        private final String identity;
+        private final long size;
+        private final long modifiedMillis;
+
+        public Key(String identity, long size, long modifiedMillis){
+            this.identity = identity;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        // the file system key (inode) survives renames, so a moved file still hits
+        public static Key of(Path file, BasicFileAttributes attributes){
+            Object fileKey = attributes.fileKey();
+            String identity = fileKey != null ? fileKey.toString() : file.toAbsolutePath().toString();
+            return new Key(identity, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        public String getIdentity(){
+            return identity;
+        }
+
+        public long getSize(){
+            return size;
+        }
+
+        public long getModifiedMillis(){
+            return modifiedMillis;
+        }
+
+        private long estimatedBytes(){
+            return identity.length() * 2L;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(obj instanceof Key other){
+                return size == other.size && modifiedMillis == other.modifiedMillis && identity.equals(other.identity);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode(){
+            int result = identity.hashCode();
+            result = 31 * result + Long.hashCode(size);
+            result = 31 * result + Long.hashCode(modifiedMillis);
+            return result;
+        }
+
+        @Override
+        public String toString(){
+            return identity + "|" + size + "|" + modifiedMillis;
+        }
+    }
+
+    public ExtractionCache(long memoryBudget, Path diskDirectory, long diskBudget){
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        Path usable = diskDirectory;   // stays null if the directory can't be used, so put() never tries the disk
+        if(usable != null){
+            try {
+                Files.createDirectories(usable);
+                diskBytes.set(measureDisk(usable));
+            } catch (IOException e) {
+                LOG.warn("Extraction cache directory unavailable, disk tier off: {}", e.getMessage());
+                usable = null;
+            }
+        }
+        this.diskDirectory = usable;
+    }
+
+    // -Dneatfile.extraction.cacheBytes (default 64 MB), -Dneatfile.extraction.cacheDir (unset = no disk tier),
+    // -Dneatfile.extraction.diskCacheBytes (default 1 GB)
+    public static ExtractionCache shared(){
+        ExtractionCache cache = shared;
+        if(cache == null){
+            synchronized(ExtractionCache.class){
+                cache = shared;
+                if(cache == null){
+                    String dir = System.getProperty("neatfile.extraction.cacheDir");
+                    cache = new ExtractionCache(
+                        Long.getLong("neatfile.extraction.cacheBytes", 64L * 1024 * 1024),
+                        dir == null || dir.isBlank() ? null : Paths.get(dir),
+                        Long.getLong("neatfile.extraction.diskCacheBytes", 1024L * 1024 * 1024));
+                    shared = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    public String get(Key key){
+        synchronized(memory){
+            String text = memory.get(key);
+            if(text != null){
+                memoryHits.increment();
+                return text;
+            }
+        }
+        String text = readDisk(key);
+        if(text != null){
+            diskHits.increment();
+            putMemory(key, text);
+            return text;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(Key key, String text){
+        putMemory(key, text);
+        writeDisk(key, text);
+    }
+
+    private void putMemory(Key key, String text){
+        long bytes = entryBytes(key, text);
+        if(bytes > memoryBudget){   // would evict everything else, leave it to the disk tier
+            return;
+        }
+        synchronized(memory){
+            String previous = memory.put(key, text);
+            if(previous != null){
+                memoryBytes -= entryBytes(key, previous);
+            }
+            memoryBytes += bytes;
+            Iterator<Map.Entry<Key, String>> eldest = memory.entrySet().iterator();
+            while(memoryBytes > memoryBudget && eldest.hasNext()){
+                Map.Entry<Key, String> entry = eldest.next();
+                memoryBytes -= entryBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+                memoryEvictions.increment();
+            }
+        }
+    }
+
+    private static long entryBytes(Key key, String text){
+        return ENTRY_OVERHEAD + key.estimatedBytes() + text.length() * 2L;
+    }
+
+    private Path diskFile(Key key){
+        return diskDirectory.resolve(Long.toHexString(hash64(key.toString())) + ".txt.gz");
+    }
+
+    // first line holds the full key so a hash collision reads as a miss
+    private String readDisk(Key key){
+        if(diskDirectory == null){
+            return null;
+        }
+        Path file = diskFile(key);
+        if(!Files.exists(file)){
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            if(!key.toString().equals(reader.readLine())){
+                return null;
+            }
+            return readAll(reader);
+        } catch (IOException e) {
+            LOG.warn("Failed to read extraction cache entry {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(Key key, String text){
+        if(diskDirectory == null){
+            return;
+        }
+        Path file = diskFile(key);
+        Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+                writer.write(key.toString());
+                writer.write('\n');
+                writer.write(text);
+            }
+            long written = Files.size(temp);
+            boolean overBudget;
+            synchronized(this){   // two writers of one key (or a prune) must not both count the entry they replace
+                long replaced = sizeOf(file);   // 0 when there was no entry yet
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                overBudget = diskBytes.addAndGet(written - replaced) > diskBudget;
+            }
+            if(overBudget){
+                pruneDisk();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write extraction cache entry {}: {}", file, e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    // drops the least recently written entries until the disk tier is back under 90% of its budget
+    private synchronized void pruneDisk(){
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDirectory, "*.txt.gz")) {
+            stream.forEach(entries::add);
+        } catch (IOException e) {
+            LOG.warn("Failed to prune extraction cache: {}", e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparingLong(ExtractionCache::modifiedMillis));
+        long total = 0;
+        for(Path entry : entries){
+            total += sizeOf(entry);
+        }
+        long target = diskBudget * 9 / 10;
+        for(Path entry : entries){
+            if(total <= target){
+                break;
+            }
+            long size = sizeOf(entry);
+            try {
+                if(Files.deleteIfExists(entry)){
+                    total -= size;
+                    diskEvictions.increment();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to evict extraction cache entry {}: {}", entry, e.getMessage());
+            }
+        }
+        diskBytes.set(total);
+    }
+
+    private static long measureDisk(Path directory) throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.txt.gz")) {
+            for(Path entry : stream){
+                total += sizeOf(entry);
+            }
+        }
+        return total;
+    }
+
+    private static long sizeOf(Path file){
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long modifiedMillis(Path file){
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while((read = reader.read(buffer)) != -1){
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    // FNV-1a, only used to spread entries over file names
+    private static long hash64(String value){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++){
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public long getMemoryHits(){
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits(){
+        return diskHits.sum();
+    }
+
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    public long getMemoryEvictions(){
+        return memoryEvictions.sum();
+    }
+
+    public long getDiskEvictions(){
+        return diskEvictions.sum();
+    }
+
+    public long getMemoryBytes(){
+        synchronized(memory){
+            return memoryBytes;
+        }
+    }
+
+    public long getDiskBytes(){
+        return diskBytes.get();
+    }
+
+    @Override
+    public String toString(){
+        return "ExtractionCache[memoryHits=" + getMemoryHits() + ", diskHits=" + getDiskHits() + ", misses=" + getMisses()
+            + ", memoryEvictions=" + getMemoryEvictions() + ", diskEvictions=" + getDiskEvictions()
+            + ", memoryBytes=" + getMemoryBytes() + "/" + memoryBudget
+            + (diskDirectory == null ? "" : ", diskBytes=" + getDiskBytes() + "/" + diskBudget) + "]";
+    }
+}
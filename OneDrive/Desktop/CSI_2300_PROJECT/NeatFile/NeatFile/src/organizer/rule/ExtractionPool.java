@@ -0,0 +1,230 @@
+package organizer.rule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import organizer.metrics.EngineMetrics;
+
+// Runs DocumentExtractor with at most `threads` extractions at a time and a deadline per file, so a malformed or
+// huge PDF/PPTX only holds up the content rules waiting on it. The clock starts when the extraction does. At the
+// deadline the caller gets a TimeoutException, the worker is interrupted and the sink stops taking text. POI and
+// PDFBox ignore interrupts and parse the whole document before the first sink call, so a worker can stay stuck;
+// it is abandoned and its slot handed to the next file (up to maxAbandoned at once, after that the slot frees when
+// the worker does). A file version that times out quarantineAfter times is quarantined: it isn't opened again until
+// it changes. Waiting for a slot longer than one deadline is a Busy, which says nothing about the file.
+public final class ExtractionPool {
+    private static final Logger LOG = LogManager.getLogger(ExtractionPool.class);
+    private static final int MAX_TRACKED = 10_000;   // file versions with timeouts on record
+
+    private static volatile ExtractionPool shared;
+
+    private final ExecutorService workers;   // unbounded, the slots limit how many run
+    private final Semaphore slots;
+    private final long timeoutNanos;
+    private final int quarantineAfter;
+    private final int maxAbandoned;
+    private final AtomicInteger abandoned = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<ExtractionCache.Key, Integer> timeouts = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ExtractionCache.Key, Integer> eldest){
+            return size() > MAX_TRACKED;
+        }
+    };
+    private final LongSupplier quarantined = this::getQuarantinedCount;
+    private final LongSupplier stuck = this::getAbandonedCount;
+
+    // no extraction slot freed up within one deadline; retry later, the file itself is fine as far as we know
+    public static final class Busy extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private Busy(String message){
+            super(message);
+        }
+    }
+
+    // -Dneatfile.extraction.threads (default 2), -Dneatfile.extraction.timeoutMillis (default 60 s),
+    // -Dneatfile.extraction.quarantineAfter (timeouts of one file version before it is skipped, default 2),
+    // -Dneatfile.extraction.maxAbandoned (stuck workers given up on at once, default 8)
+    public static ExtractionPool shared(){
+        ExtractionPool pool = shared;
+        if(pool == null){
+            synchronized(ExtractionPool.class){
+                pool = shared;
+                if(pool == null){
+                    pool = new ExtractionPool(
+                        Integer.getInteger("neatfile.extraction.threads", 2),
+                        Long.getLong("neatfile.extraction.timeoutMillis", 60_000L),
+                        Integer.getInteger("neatfile.extraction.quarantineAfter", 2),
+                        Integer.getInteger("neatfile.extraction.maxAbandoned", 8));
+                    EngineMetrics.shared().addGauge(EngineMetrics.QUARANTINED_FILES, pool.quarantined);
+                    EngineMetrics.shared().addGauge(EngineMetrics.ABANDONED_EXTRACTIONS, pool.stuck);
+                    shared = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    public ExtractionPool(int threads, long timeoutMillis, int quarantineAfter, int maxAbandoned){
+        this.workers = Executors.newCachedThreadPool(namedThreads());
+        this.slots = new Semaphore(Math.max(1, threads));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.quarantineAfter = Math.max(1, quarantineAfter);
+        this.maxAbandoned = Math.max(0, maxAbandoned);
+    }
+
+    // DocumentExtractor.extract on a worker; throws TimeoutException when the file runs past its deadline, Busy when
+    // no slot frees up within one deadline
+    public boolean extract(ExtractionCache.Key key, Path file, DocumentExtractor.TextSink sink) throws Exception {
+        if(isQuarantined(key)){
+            throw new IOException("Quarantined after repeated extraction timeouts: " + file);
+        }
+        waiting.incrementAndGet();
+        try {
+            if(!slots.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)){
+                throw new Busy("No extraction worker free for " + file);
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+        Run run = new Run();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {   // not submit(): a cancelled FutureTask may never run, and the slot must come back
+                run.worker = Thread.currentThread();
+                try {
+                    result.complete(DocumentExtractor.extract(file, piece -> run.cancelled || sink.accept(piece)));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    finished(run, file);
+                    Thread.interrupted();   // don't hand a pending interrupt to the next extraction on this thread
+                }
+            });
+        } catch (RuntimeException e) {
+            finished(run, file);
+            throw e;
+        }
+        try {
+            return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel(run);
+            timedOut(key, file);
+            abandon(run);
+            throw new TimeoutException("Extraction took longer than "
+                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms: " + file);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof Exception cause){
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            cancel(run);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private static void cancel(Run run){
+        run.cancelled = true;
+        synchronized(run){
+            Thread worker = run.worker;
+            if(worker != null && !run.finished){
+                worker.interrupt();
+            }
+        }
+    }
+
+    // one extraction; the slot is released exactly once, by the worker or by the caller giving up on it
+    private static final class Run {
+        private volatile boolean cancelled;
+        private volatile Thread worker;
+        private boolean finished;
+        private boolean abandoned;
+    }
+
+    private void finished(Run run, Path file){
+        synchronized(run){
+            run.finished = true;
+            if(run.abandoned){
+                abandoned.decrementAndGet();
+                LOG.info("Abandoned extraction of {} finished", file);
+            } else {
+                slots.release();
+            }
+        }
+    }
+
+    // the worker didn't stop at the deadline: leave it running and hand its slot to the next file
+    private void abandon(Run run){
+        synchronized(run){
+            if(run.finished){
+                return;
+            }
+            if(abandoned.get() >= maxAbandoned){
+                LOG.warn("{} stuck extractions already abandoned; this one keeps its slot until it finishes", abandoned.get());
+                return;
+            }
+            abandoned.incrementAndGet();
+            run.abandoned = true;
+            slots.release();
+        }
+    }
+
+    private void timedOut(ExtractionCache.Key key, Path file){
+        EngineMetrics.shared().extractionTimedOut();
+        int strikes;
+        synchronized(timeouts){
+            strikes = timeouts.merge(key, 1, Integer::sum);
+        }
+        if(strikes == quarantineAfter){
+            LOG.warn("Quarantined {} after {} extraction timeouts; it is skipped until it changes", file, strikes);
+        }
+    }
+
+    public boolean isQuarantined(ExtractionCache.Key key){
+        synchronized(timeouts){
+            Integer strikes = timeouts.get(key);
+            return strikes != null && strikes >= quarantineAfter;
+        }
+    }
+
+    public long getQuarantinedCount(){
+        synchronized(timeouts){
+            return timeouts.values().stream().filter(strikes -> strikes >= quarantineAfter).count();
+        }
+    }
+
+    // extractions waiting for a slot
+    public int getQueued(){
+        return waiting.get();
+    }
+
+    // workers still stuck in an extraction that was given up on
+    public long getAbandonedCount(){
+        return abandoned.get();
+    }
+
+    private static ThreadFactory namedThreads(){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "neatfile-extract-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -17,6 +17,7 @@ public class FileCategoryRule implements Rule{
     } 
     
     private String category;
+    private RuleMatcher compiled;
     
     public FileCategoryRule(String category){
         this.category = category;
@@ -28,9 +29,15 @@ public class FileCategoryRule implements Rule{
 
     @Override
     public boolean matches(Path file){
-        String fileName = file.getFileName().toString().toLowerCase();
-        Set<String> extensions = CATEGORIES.getOrDefault(category, new HashSet<>());
-        return extensions.stream().anyMatch(fileName::endsWith);
+        if(compiled == null){
+            compiled = compile();
+        }
+        return compiled.matches(FileContext.of(file));
+    }
+
+    @Override
+    public RuleMatcher compile(){
+        return Matching.suffixMatcher(CATEGORIES.getOrDefault(category, new HashSet<>()));
     }
 
     @Override
@@ -41,6 +48,15 @@ public class FileCategoryRule implements Rule{
         return json;
     }
 
+    @Override
+    public Set<String> extensionGate(){
+        Set<String> gate = new HashSet<>();
+        for(String ext : CATEGORIES.getOrDefault(category, new HashSet<>())){
+            gate.add(ext.toLowerCase());
+        }
+        return gate;
+    }
+
     @Override
     public boolean equals(Object obj){
         if(obj instanceof FileCategoryRule other){
@@ -0,0 +1,156 @@
+package organizer.rule;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.BitSet;
+
+// Everything rules need to know about one file for one evaluation. Attributes are read at most once
+// (or handed in by a directory walk that already has them), so a file costs one stat no matter how
+// many groups and rules look at it. Not thread-safe: each evaluation gets its own context.
+public class FileContext {
+    private final Path file;
+    private final long evaluationTime;
+    private String name;
+    private String lowerName;
+    private String extension;
+    private BasicFileAttributes attributes;
+    private IOException attributeError;
+    private long validUntil = Long.MAX_VALUE;
+    private ContentNeedles contentNeedles;   // every content search of the active groups, run as one pass
+    private BitSet contentWanted;
+    private BitSet contentFound;
+
+    private FileContext(Path file, BasicFileAttributes attributes){
+        this.file = file;
+        this.attributes = attributes;
+        this.evaluationTime = System.currentTimeMillis();
+    }
+
+    public static FileContext of(Path file){
+        return new FileContext(file, null);
+    }
+
+    // seeds the context with attributes the caller already has, e.g. from Files.walkFileTree
+    public static FileContext of(Path file, BasicFileAttributes attributes){
+        return new FileContext(file, attributes);
+    }
+
+    public Path getPath(){
+        return file;
+    }
+
+    public String getName(){
+        if(name == null){
+            Path fileName = file.getFileName();
+            name = fileName == null ? "" : fileName.toString();
+        }
+        return name;
+    }
+
+    public String getLowerName(){
+        if(lowerName == null){
+            lowerName = getName().toLowerCase();
+        }
+        return lowerName;
+    }
+
+    // lowercase last extension including the dot, or "" when the name has none
+    public String getExtension(){
+        if(extension == null){
+            String lower = getLowerName();
+            int dot = lower.lastIndexOf('.');
+            extension = dot < 0 ? "" : lower.substring(dot);
+        }
+        return extension;
+    }
+
+    // one clock reading per evaluation so every time-based rule sees the same "now"
+    public long getEvaluationTime(){
+        return evaluationTime;
+    }
+
+    // time-based rules report when their verdict for this (unchanged) file flips, so the decision can expire then
+    public void validUntil(long millis){
+        validUntil = Math.min(validUntil, millis);
+    }
+
+    // earliest flip reported during this evaluation, Long.MAX_VALUE if nothing depends on the clock
+    public long getValidUntil(){
+        return validUntil;
+    }
+
+    // shares one extraction and search among the content rules of the groups that will look at this file
+    public void shareContent(ContentNeedles needles, BitSet wanted){
+        contentNeedles = needles;
+        contentWanted = wanted;
+        contentFound = null;
+    }
+
+    ContentNeedles getContentNeedles(){
+        return contentNeedles;
+    }
+
+    // null means every needle
+    BitSet getContentWanted(){
+        return contentWanted;
+    }
+
+    boolean wantsContent(int id){
+        return contentWanted == null || contentWanted.get(id);
+    }
+
+    BitSet getContentFound(){
+        return contentFound;
+    }
+
+    void setContentFound(BitSet found){
+        contentFound = found;
+    }
+
+    public BasicFileAttributes attributes() throws IOException {
+        if(attributes == null){
+            if(attributeError != null){
+                throw attributeError;
+            }
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                attributeError = e;
+                throw e;
+            }
+        }
+        return attributes;
+    }
+
+    public boolean exists(){
+        try {
+            attributes();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public long size() throws IOException {
+        return attributes().size();
+    }
+
+    public long lastModifiedMillis() throws IOException {
+        return attributes().lastModifiedTime().toMillis();
+    }
+
+    public long lastAccessMillis() throws IOException {
+        return attributes().lastAccessTime().toMillis();
+    }
+
+    public long creationMillis() throws IOException {
+        return attributes().creationTime().toMillis();
+    }
+
+    @Override
+    public String toString(){
+        return file.toString();
+    }
+}
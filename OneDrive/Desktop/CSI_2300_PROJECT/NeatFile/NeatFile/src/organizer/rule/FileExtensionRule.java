@@ -8,6 +8,7 @@ import org.json.JSONObject;
 
 public class FileExtensionRule implements Rule{
     private Set<String> extensions;
+    private RuleMatcher compiled;
 
     public FileExtensionRule(Set<String> extensions){
         this.extensions = new HashSet<>();
@@ -44,8 +45,24 @@ public class FileExtensionRule implements Rule{
 
     @Override
     public boolean matches(Path file) {
-        String fileName = file.getFileName().toString().toLowerCase();
-        return extensions.stream().anyMatch(fileName::endsWith);
+        if(compiled == null){
+            compiled = compile();
+        }
+        return compiled.matches(FileContext.of(file));
+    }
+
+    @Override
+    public RuleMatcher compile(){
+        return Matching.suffixMatcher(extensions);
+    }
+
+    @Override
+    public Set<String> extensionGate(){
+        Set<String> gate = new HashSet<>();
+        for(String ext : extensions){
+            gate.add(ext.toLowerCase());
+        }
+        return gate;
     }
 
     @Override
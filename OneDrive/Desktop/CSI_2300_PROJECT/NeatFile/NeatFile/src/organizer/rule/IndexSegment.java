@@ -0,0 +1,286 @@
+package organizer.rule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+// One immutable, memory-mapped file of ContentIndex. Layout (big-endian):
+//   header   int magic, int version, int docCount, int trigramCount, long postingsAt, long keysAt, long offsetsAt
+//   docs     per document: int id, long size, long mtime, UTF identity, UTF path
+//   postings int doc ids, grouped by trigram, ascending within each group
+//   keys     long trigram, ascending
+//   offsets  int start of each trigram's postings, plus one end marker
+// Postings stay fixed-width so a lookup is two binary searches straight on the mapping, without decoding anything.
+final class IndexSegment {
+    private static final int MAGIC = 0x4E465449;   // "NFTI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    record Doc(int id, long size, long modifiedMillis, String identity, String path) {
+    }
+
+    // a stream of (trigram, doc) pairs in trigram order, then doc order
+    interface Cursor {
+        long trigram();
+
+        int doc();
+
+        // false once exhausted
+        boolean advance();
+    }
+
+    private final Path file;
+    private final long generation;
+    private final List<Doc> docs;
+    private final int trigramCount;
+    private final MappedByteBuffer tables;   // postings, keys and offsets
+    private final long postingsAt;
+    private final long keysAt;
+    private final long offsetsAt;
+
+    private IndexSegment(Path file, long generation, List<Doc> docs, int trigramCount, MappedByteBuffer tables,
+                         long postingsAt, long keysAt, long offsetsAt){
+        this.file = file;
+        this.generation = generation;
+        this.docs = docs;
+        this.trigramCount = trigramCount;
+        this.tables = tables;
+        this.postingsAt = postingsAt;
+        this.keysAt = keysAt;
+        this.offsetsAt = offsetsAt;
+    }
+
+    static IndexSegment open(Path file, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // fill the header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not an index segment: " + file);
+            }
+            int docCount = header.getInt();
+            int trigramCount = header.getInt();
+            long postingsAt = header.getLong();
+            long keysAt = header.getLong();
+            long offsetsAt = header.getLong();
+            long end = offsetsAt + (trigramCount + 1L) * Integer.BYTES;
+            if (end != channel.size() || postingsAt < HEADER_BYTES || keysAt < postingsAt || offsetsAt < keysAt) {
+                throw new IOException("Truncated index segment: " + file);
+            }
+
+            List<Doc> docs = new ArrayList<>(docCount);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(HEADER_BYTES))));
+            for (int i = 0; i < docCount; i++) {
+                docs.add(new Doc(in.readInt(), in.readLong(), in.readLong(), in.readUTF(), in.readUTF()));
+            }
+            MappedByteBuffer tables = channel.map(FileChannel.MapMode.READ_ONLY, postingsAt, end - postingsAt);
+            return new IndexSegment(file, generation, List.copyOf(docs), trigramCount, tables, postingsAt, keysAt, offsetsAt);
+        }
+    }
+
+    // writes the pairs from all cursors (merged, doc ids filtered by keep) plus the given documents, then opens the result
+    static IndexSegment write(Path file, long generation, Collection<Doc> docs, List<Cursor> cursors, IntPredicate keep) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] keys = new long[1024];
+        int[] offsets = new int[1025];
+        int trigramCount = 0;
+        long postingsAt;
+        long keysAt;
+        long offsetsAt;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel.position(HEADER_BYTES)), 1 << 16));
+            for (Doc doc : docs) {
+                out.writeInt(doc.id());
+                out.writeLong(doc.size());
+                out.writeLong(doc.modifiedMillis());
+                out.writeUTF(doc.identity());
+                out.writeUTF(doc.path());
+            }
+            out.flush();
+            postingsAt = channel.position();
+
+            PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> a.trigram() != b.trigram()
+                ? Long.compare(a.trigram(), b.trigram()) : Integer.compare(a.doc(), b.doc()));
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            int postings = 0;
+            long current = 0;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                if (keep.test(cursor.doc())) {
+                    if (trigramCount == 0 || cursor.trigram() != current) {
+                        if (trigramCount == keys.length) {
+                            keys = Arrays.copyOf(keys, keys.length * 2);
+                            offsets = Arrays.copyOf(offsets, keys.length + 1);
+                        }
+                        current = cursor.trigram();
+                        keys[trigramCount] = current;
+                        offsets[trigramCount++] = postings;
+                    }
+                    out.writeInt(cursor.doc());
+                    if (++postings < 0) {
+                        throw new IOException("Index segment too large: " + file);
+                    }
+                }
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            offsets[trigramCount] = postings;
+            out.flush();
+            keysAt = channel.position();
+            for (int i = 0; i < trigramCount; i++) {
+                out.writeLong(keys[i]);
+            }
+            out.flush();
+            offsetsAt = channel.position();
+            for (int i = 0; i <= trigramCount; i++) {
+                out.writeInt(offsets[i]);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(docs.size()).putInt(trigramCount)
+                .putLong(postingsAt).putLong(keysAt).putLong(offsetsAt).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_BYTES - header.remaining());
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(file, generation);
+    }
+
+    // the sorted trigrams of one document that is still in memory, as a cursor
+    static Cursor cursor(int doc, long[] trigrams){
+        return new Cursor() {
+            private int next;
+
+            @Override
+            public long trigram(){
+                return trigrams[next - 1];
+            }
+
+            @Override
+            public int doc(){
+                return doc;
+            }
+
+            @Override
+            public boolean advance(){
+                return next++ < trigrams.length;
+            }
+        };
+    }
+
+    // every (trigram, doc) pair of this segment, for merging
+    Cursor cursor(){
+        return new Cursor() {
+            private int key = 0;
+            private int posting = -1;
+
+            @Override
+            public long trigram(){
+                return key(key);
+            }
+
+            @Override
+            public int doc(){
+                return posting(posting);
+            }
+
+            @Override
+            public boolean advance(){
+                posting++;
+                while (key < trigramCount && posting >= offset(key + 1)) {
+                    key++;
+                }
+                return key < trigramCount;
+            }
+        };
+    }
+
+    boolean contains(int doc, long trigram){
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = key(mid);
+            if (key < trigram) {
+                low = mid + 1;
+            } else if (key > trigram) {
+                high = mid - 1;
+            } else {
+                return containsPosting(offset(mid), offset(mid + 1) - 1, doc);
+            }
+        }
+        return false;
+    }
+
+    private boolean containsPosting(int low, int high, int doc){
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = posting(mid);
+            if (value < doc) {
+                low = mid + 1;
+            } else if (value > doc) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long key(int index){
+        return tables.getLong((int) (keysAt - postingsAt) + index * Long.BYTES);
+    }
+
+    private int offset(int index){
+        return tables.getInt((int) (offsetsAt - postingsAt) + index * Integer.BYTES);
+    }
+
+    private int posting(int index){
+        return tables.getInt(index * Integer.BYTES);
+    }
+
+    List<Doc> docs(){
+        return docs;
+    }
+
+    Path file(){
+        return file;
+    }
+
+    long generation(){
+        return generation;
+    }
+
+    long sizeBytes(){
+        return offsetsAt + (trigramCount + 1L) * Integer.BYTES;
+    }
+}
@@ -1,16 +1,18 @@
 package organizer.rule;
 
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
 import java.io.IOException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.json.JSONObject;
 
 
 
 public class LastAccessedRule implements Rule{
+    private static final Logger LOG = LogManager.getLogger(LastAccessedRule.class);
     private long days;
+    private RuleMatcher compiled;
 
     public LastAccessedRule(long days){
         this.days = days;
@@ -30,14 +32,43 @@ public class LastAccessedRule implements Rule{
 
     @Override
     public boolean matches(Path file){
-        try {
-            FileTime lastAccess = (FileTime) Files.getAttribute(file, "lastAccessTime");
-            long thresholdTime = System.currentTimeMillis() - (days * 24 * 60 * 60 * 1000);
-            return lastAccess.toMillis() < thresholdTime;
-        } catch(IOException e) {
-            System.err.println("Error accessing file " + file + ": " + e.getMessage());
-            return false;
+        if(compiled == null){
+            compiled = compile();
         }
+        return compiled.matches(FileContext.of(file));
+    }
+
+    @Override
+    public RuleCost cost(){
+        return RuleCost.ATTRIBUTE;
+    }
+
+    @Override
+    public boolean isTimeDependent(){
+        return true;
+    }
+
+    @Override
+    public boolean readsAccessTime(){
+        return true;
+    }
+
+    @Override
+    public RuleMatcher compile(){
+        long maxAgeMillis = days * 24 * 60 * 60 * 1000;
+        return file -> {
+            try {
+                long turnsOld = file.lastAccessMillis() + maxAgeMillis;
+                if (turnsOld >= file.getEvaluationTime()) {
+                    file.validUntil(turnsOld + 1);   // fails until then, passes after unless the file is accessed again
+                    return false;
+                }
+                return true;
+            } catch(IOException e) {
+                LOG.warn("Error accessing file {}: {}", file, e.getMessage());
+                return false;
+            }
+        };
     }
 
     @Override
@@ -0,0 +1,52 @@
+package organizer.rule;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// helpers shared by the compiled matchers
+final class Matching {
+    private Matching(){}
+
+    static Pattern compilePattern(String input, boolean caseSensitive){
+        return caseSensitive ? Pattern.compile(input) : Pattern.compile(input, Pattern.CASE_INSENSITIVE);
+    }
+
+    // turns an extension set into a lookup on the name's dot-suffixes
+    static RuleMatcher suffixMatcher(Set<String> extensions){
+        Set<String> dotted = new HashSet<>();
+        List<String> bare = new ArrayList<>();   // hand-edited configs can hold plain suffixes like "png"
+        int maxDots = 0;
+        for(String ext : extensions){
+            String lower = ext.toLowerCase();
+            if(lower.startsWith(".")){
+                dotted.add(lower);
+                maxDots = Math.max(maxDots, (int) lower.chars().filter(c -> c == '.').count());
+            } else {
+                bare.add(lower);
+            }
+        }
+        int dots = maxDots;
+        return file -> {
+            String fileName = file.getLowerName();
+            if(dots > 0 && dotted.contains(file.getExtension())){
+                return true;
+            }
+            int index = fileName.lastIndexOf('.');
+            for(int seen = 1; seen < dots && index > 0; seen++){   // multi-dot extensions such as ".tar.gz"
+                index = fileName.lastIndexOf('.', index - 1);
+                if(index >= 0 && dotted.contains(fileName.substring(index))){
+                    return true;
+                }
+            }
+            for(String suffix : bare){
+                if(fileName.endsWith(suffix)){
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
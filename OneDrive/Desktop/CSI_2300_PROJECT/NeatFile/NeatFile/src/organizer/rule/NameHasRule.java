@@ -8,6 +8,7 @@ public class NameHasRule implements Rule{
     private String input;
     private boolean caseSensitive;
     private boolean useRegex;
+    private RuleMatcher compiled;
 
     public NameHasRule(String input, boolean caseSensitive, boolean useRegex){
         this.input = input;
@@ -35,14 +36,24 @@ public class NameHasRule implements Rule{
 
     @Override
     public boolean matches(Path file){
-        String fileName = file.getFileName().toString();
+        if(compiled == null){
+            compiled = compile();
+        }
+        return compiled.matches(FileContext.of(file));
+    }
+
+    @Override
+    public RuleMatcher compile(){
         if(useRegex){
-            Pattern pattern = caseSensitive ? Pattern.compile(input) : Pattern.compile(input, Pattern.CASE_INSENSITIVE);
-            return pattern.matcher(fileName).find();
+            Pattern pattern = Matching.compilePattern(input, caseSensitive);
+            return file -> pattern.matcher(file.getName()).find();
+        }
+        if(caseSensitive){
+            String needle = input;
+            return file -> file.getName().contains(needle);
         }
-        String compareName = caseSensitive ? fileName : fileName.toLowerCase();
-        String compareInput = caseSensitive ? input : input.toLowerCase();
-        return compareName.contains(compareInput);
+        String needle = input.toLowerCase();
+        return file -> file.getLowerName().contains(needle);
     }
 
     @Override
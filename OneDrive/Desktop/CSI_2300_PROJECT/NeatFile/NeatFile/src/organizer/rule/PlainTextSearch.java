@@ -0,0 +1,65 @@
+package organizer.rule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Searches a plain-text file in fixed-size chunks straight off a FileChannel.
+// Memory use is two buffers no matter how large the file is, and reading stops as soon as the scanner has its answer.
+public final class PlainTextSearch {
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private PlainTextSearch(){}
+
+    // feeds the whole file to the scanner, or until it says stop; true if it did
+    public static boolean feed(Path file, TextSearch.Scanner scanner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_BYTES);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_BYTES);
+
+            int read = channel.read(bytes);
+            bytes.flip();
+            CharsetDecoder decoder = detectCharset(bytes).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)        // non-UTF-8 bytes become U+FFFD instead of failing the file
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            boolean endOfInput = read < 0;
+            while(true){
+                decoder.decode(bytes, chars, endOfInput);
+                if(endOfInput){
+                    decoder.flush(chars);
+                }
+                chars.flip();
+                if(scanner.feed(chars)){
+                    return true;
+                }
+                chars.clear();
+                if(endOfInput){
+                    return false;
+                }
+                bytes.compact();   // keeps a multi-byte sequence split across reads
+                endOfInput = channel.read(bytes) < 0;
+                bytes.flip();
+            }
+        }
+    }
+
+    // honours a UTF-16 byte order mark, otherwise assumes UTF-8 (which also covers ASCII)
+    private static Charset detectCharset(ByteBuffer bytes){
+        if(bytes.remaining() >= 2){
+            int first = bytes.get(0) & 0xFF;
+            int second = bytes.get(1) & 0xFF;
+            if((first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE)){
+                return StandardCharsets.UTF_16;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,54 @@
+package organizer.rule;
+
+import java.util.regex.Pattern;
+
+// Regex over a sliding window: each chunk is searched together with the tail of the previous one.
+// A match longer than the carried tail can be missed when it straddles a chunk boundary.
+class RegexSearch implements TextSearch {
+    private static final int CARRY = 64 * 1024;
+
+    private final Pattern pattern;
+
+    RegexSearch(Pattern pattern){
+        this.pattern = pattern;
+    }
+
+    @Override
+    public TextSearch.Scanner newScanner(){
+        return new Scanner();
+    }
+
+    private class Scanner implements TextSearch.Scanner {
+        private final StringBuilder window = new StringBuilder();
+        private boolean found;
+
+        @Override
+        public boolean feed(CharSequence chunk){
+            if(found){
+                return true;
+            }
+            if(window.length() == 0){
+                if(pattern.matcher(chunk).find()){   // common case: whole document in one chunk, no copy
+                    found = true;
+                    return true;
+                }
+                window.append(chunk, Math.max(0, chunk.length() - CARRY), chunk.length());
+                return false;
+            }
+            window.append(chunk);
+            if(pattern.matcher(window).find()){
+                found = true;
+                return true;
+            }
+            if(window.length() > CARRY){
+                window.delete(0, window.length() - CARRY);
+            }
+            return false;
+        }
+
+        @Override
+        public boolean found(){
+            return found;
+        }
+    }
+}
@@ -1,11 +1,37 @@
 package organizer.rule;
 
 import java.nio.file.Path;
+import java.util.Set;
 import org.json.JSONObject;
 
 public interface Rule {
 
     boolean matches(Path file);
+
+    // how expensive one evaluation is expected to be, so cheap rules can short-circuit expensive ones
+    default RuleCost cost(){
+        return RuleCost.NAME;
+    }
+
+    // true if the verdict for an unchanged file can flip as time passes; its matcher should then report
+    // FileContext.validUntil so cached decisions expire on time
+    default boolean isTimeDependent(){
+        return false;
+    }
+
+    // true if the verdict depends on the file's last access time, which reading the file (e.g. for a content
+    // rule) changes; cached decisions for files such a rule looks at are keyed on it
+    default boolean readsAccessTime(){
+        return false;
+    }
+
+    // does the rule's setup work once and returns a matcher that only does per-file work
+    RuleMatcher compile();
+
+    // lowercase extensions (with leading '.') a file must end with to pass this rule, or null if the rule doesn't gate on extension
+    default Set<String> extensionGate(){
+        return null;
+    }
     boolean equals(Object obj);
     int hashCode();
 
@@ -0,0 +1,18 @@
+package organizer.rule;
+
+// Rough cost class of a rule, used to order a group's rules before real timings exist
+public enum RuleCost {
+    NAME(100),          // only looks at the file name
+    ATTRIBUTE(5_000),   // needs a stat call
+    CONTENT(5_000_000); // opens and parses the file
+
+    private final long estimatedNanos;
+
+    RuleCost(long estimatedNanos){
+        this.estimatedNanos = estimatedNanos;
+    }
+
+    public long getEstimatedNanos(){
+        return estimatedNanos;
+    }
+}
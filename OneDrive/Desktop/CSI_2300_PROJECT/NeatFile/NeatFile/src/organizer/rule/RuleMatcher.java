@@ -0,0 +1,7 @@
+package organizer.rule;
+
+// A rule with all of its per-call setup (patterns, normalized needles, lookups) done up front
+@FunctionalInterface
+public interface RuleMatcher {
+    boolean matches(FileContext file);
+}
@@ -0,0 +1,75 @@
+package organizer.rule;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Live evaluation counters for one compiled rule
+public class RuleStats {
+    private static final int MIN_SAMPLES = 16;   // timings trusted over the cost estimate after this many
+
+    private final RuleCost cost;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder timedEvaluations = new LongAdder();
+    private final LongAdder timedNanos = new LongAdder();
+
+    public RuleStats(RuleCost cost){
+        this.cost = cost;
+    }
+
+    public void recordEvaluation(boolean passed){
+        evaluations.increment();
+        if(!passed){
+            rejections.increment();
+        }
+    }
+
+    public void recordTiming(long nanos){
+        timedEvaluations.increment();
+        timedNanos.add(nanos);
+    }
+
+    public long getEvaluations(){
+        return evaluations.sum();
+    }
+
+    public long getRejections(){
+        return rejections.sum();
+    }
+
+    public long getTimedNanos(){
+        return timedNanos.sum();
+    }
+
+    public long getTimedEvaluations(){
+        return timedEvaluations.sum();
+    }
+
+    // mean of the timed evaluations, NaN before the first one
+    public double measuredNanos(){
+        long samples = timedEvaluations.sum();
+        return samples == 0 ? Double.NaN : (double) timedNanos.sum() / samples;
+    }
+
+    // the measured mean once there are enough samples, the cost estimate until then
+    private double expectedNanos(){
+        long samples = timedEvaluations.sum();
+        if(samples < MIN_SAMPLES){
+            return cost.getEstimatedNanos();
+        }
+        return (double) timedNanos.sum() / samples;
+    }
+
+    // smoothed so a rule with no history counts as rejecting half the time
+    public double rejectionRate(){
+        return (rejections.sum() + 1.0) / (evaluations.sum() + 2.0);
+    }
+
+    // expected time spent per file this rule rejects; cheapest-first ordering minimises the work before a short-circuit
+    public double rank(){
+        return expectedNanos() / rejectionRate();
+    }
+
+    public RuleCost getCost(){
+        return cost;
+    }
+}
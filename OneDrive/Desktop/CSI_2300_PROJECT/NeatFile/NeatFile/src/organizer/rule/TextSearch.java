@@ -0,0 +1,21 @@
+package organizer.rule;
+
+import java.util.regex.Pattern;
+
+// A compiled search that can be fed text a chunk at a time, so callers never need the whole document in memory
+public interface TextSearch {
+
+    Scanner newScanner();
+
+    // per-document search state; matches that straddle two chunks are still found
+    interface Scanner {
+        // returns true once the search has matched, after which callers can stop feeding
+        boolean feed(CharSequence chunk);
+
+        boolean found();
+    }
+
+    static TextSearch regex(Pattern pattern){
+        return new RegexSearch(pattern);
+    }
+}
@@ -0,0 +1,104 @@
+package organizer.rule;
+
+import java.util.Arrays;
+
+// The distinct case-folded 3-character sequences of one text, collected a chunk at a time like TextSearch.Scanner.
+// Folding matches ContentNeedles, so a literal needle (either case mode) can only occur in a text that has all its trigrams.
+// Packed as three 16-bit chars under a marker bit, so no trigram is 0 and the open-addressed set needs no extra flag.
+final class Trigrams {
+    static final int MAX_DISTINCT = 1 << 20;   // keeps the set under 16 MB; a text with more is left unindexed
+    private static final long MARKER = 1L << 48;
+
+    private long[] table = new long[1 << 10];
+    private int count;
+    private char first;
+    private char second;
+    private int carried;   // how many of first/second hold real chars (0-2)
+    private boolean overflowed;
+
+    static char fold(char c){
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static long pack(char a, char b, char c){
+        return MARKER | ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    // sorted distinct trigrams of a literal needle, or null when it is too short to narrow anything down
+    static long[] ofNeedle(String needle){
+        if (needle.length() < 3) {
+            return null;
+        }
+        Trigrams trigrams = new Trigrams();
+        trigrams.feed(needle);
+        return trigrams.toSortedArray();
+    }
+
+    void feed(CharSequence chunk){
+        if (overflowed) {
+            return;
+        }
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            char c = fold(chunk.charAt(i));
+            if (carried == 2) {
+                add(pack(first, second, c));
+            } else {
+                carried++;
+            }
+            first = second;
+            second = c;
+            if (overflowed) {
+                return;
+            }
+        }
+    }
+
+    private void add(long trigram){
+        int mask = table.length - 1;
+        int slot = Long.hashCode(trigram * 0x9E3779B97F4A7C15L) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == trigram) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = trigram;
+        if (++count >= MAX_DISTINCT) {
+            overflowed = true;
+            table = null;
+        } else if (count * 2 > table.length) {
+            grow();
+        }
+    }
+
+    private void grow(){
+        long[] old = table;
+        table = new long[old.length * 2];
+        count = 0;
+        for (long trigram : old) {
+            if (trigram != 0) {
+                add(trigram);
+            }
+        }
+    }
+
+    // too many distinct trigrams to be worth indexing (e.g. binary garbage from a broken PDF)
+    boolean overflowed(){
+        return overflowed;
+    }
+
+    long[] toSortedArray(){
+        if (overflowed) {
+            throw new IllegalStateException("too many trigrams");
+        }
+        long[] sorted = new long[count];
+        int i = 0;
+        for (long trigram : table) {
+            if (trigram != 0) {
+                sorted[i++] = trigram;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}